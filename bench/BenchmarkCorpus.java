@@ -0,0 +1,216 @@
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required byOCP applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+
+import com.jsonReading.QAData;
+import com.jsonReading.ReadYahooDataBase;
+
+/**
+ * An in-memory index and a set of queries to benchmark passage searchers
+ * against. The corpus is either generated, with documents of a given length
+ * drawn from a Zipfian vocabulary, or read from an nfL6 JSON file, in which
+ * case the queries are the records' questions.
+ */
+public class BenchmarkCorpus implements AutoCloseable {
+
+	private static final int VOCABULARY_SIZE = 5000;
+
+	private final Directory dir;
+	private final DirectoryReader reader;
+	private final IndexSearcher searcher;
+	private final Query[] queries;
+	private final TopDocs[] topDocs;
+
+	private BenchmarkCorpus(Directory dir, Query[] queries, int topK) throws IOException {
+		this.dir = dir;
+		this.reader = DirectoryReader.open(dir);
+		this.searcher = new IndexSearcher(reader);
+		this.queries = queries;
+		this.topDocs = new TopDocs[queries.length];
+		for (int i = 0; i < queries.length; i++) {
+			topDocs[i] = searcher.search(queries[i], topK);
+		}
+	}
+
+	/**
+	 * Creates a corpus of generated documents.
+	 *
+	 * @param numDocs
+	 *            the number of documents.
+	 * @param docLength
+	 *            the approximate length, in characters, of each document.
+	 * @param numQueries
+	 *            the number of (two or three term) queries.
+	 * @param topK
+	 *            the number of top documents of each query.
+	 */
+	public static BenchmarkCorpus generate(int numDocs, int docLength, int numQueries, int topK, long seed)
+			throws IOException {
+		final Random random = new Random(seed);
+		final String[] vocabulary = new String[VOCABULARY_SIZE];
+		for (int i = 0; i < vocabulary.length; i++) {
+			vocabulary[i] = "w" + Integer.toString(i, 26);
+		}
+		final List<QAData> records = new ArrayList<>(numDocs);
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < numDocs; i++) {
+			sb.setLength(0);
+			while (sb.length() < docLength) {
+				sb.append(zipf(random, vocabulary)).append(random.nextInt(12) == 0 ? ". " : " ");
+			}
+			records.add(new QAData("generated", "", new String[] { sb.toString() }, "", "doc" + i));
+		}
+		final Query[] queries = new Query[numQueries];
+		for (int i = 0; i < numQueries; i++) {
+			final int numTerms = 2 + random.nextInt(2);
+			sb.setLength(0);
+			for (int j = 0; j < numTerms; j++) {
+				// Skip the most frequent words, which would match almost every document.
+				sb.append(vocabulary[20 + random.nextInt(500)]).append(' ');
+			}
+			queries[i] = parse(sb.toString());
+		}
+		return new BenchmarkCorpus(index(records.iterator()), queries, topK);
+	}
+
+	/**
+	 * Creates a corpus from the first records of an nfL6 JSON file, whose
+	 * questions are used as queries.
+	 */
+	public static BenchmarkCorpus fromFile(String path, int maxDocs, int numQueries, int topK) throws IOException {
+		final List<QAData> records = new ArrayList<>();
+		try (Stream<QAData> stream = ReadYahooDataBase.stream(path)) {
+			stream.limit(maxDocs).forEach(records::add);
+		}
+		final List<QAData> sample = new ArrayList<>(records);
+		Collections.shuffle(sample, new Random(0));
+		final List<Query> queries = new ArrayList<>(numQueries);
+		for (final QAData data : sample) {
+			if (queries.size() == numQueries) {
+				break;
+			}
+			queries.add(parse(QueryParser.escape(data.getQuestion())));
+		}
+		return new BenchmarkCorpus(index(records.iterator()), queries.toArray(new Query[0]), topK);
+	}
+
+	/**
+	 * Opens the corpus configured by system properties: the nfL6 file given by
+	 * {@code -Dcorpus=<path>} (with at most {@code -Dcorpus.docs} records), or a
+	 * generated corpus of {@code -Dcorpus.docs} documents of the given length.
+	 */
+	public static BenchmarkCorpus open(int docLength, int topK) throws IOException {
+		final int numDocs = Integer.getInteger("corpus.docs", 10000);
+		final int numQueries = Integer.getInteger("corpus.queries", 200);
+		final String path = System.getProperty("corpus");
+		if (path != null) {
+			return fromFile(path, numDocs, numQueries, topK);
+		}
+		return generate(numDocs, docLength, numQueries, topK, 0);
+	}
+
+	/**
+	 * Returns the {@link PassageScorer} with the given name, for passages of the
+	 * given length.
+	 */
+	public PassageScorer scorer(String name, int passageLength) {
+		switch (name) {
+		case "BY_DOC_SCORE":
+			return PassageScorer.BY_DOC_SCORE;
+		case "DOC_SCORE_AND_QUERY_TF":
+			return PassageScorer.DOC_SCORE_AND_QUERY_TF;
+		case "PROXIMITY":
+			return new ProximityPassageScorer();
+		case "BM25":
+			return new BM25PassageScorer(searcher.getIndexReader(), QADataIndexer.BODY_FIELD, passageLength);
+		default:
+			throw new IllegalArgumentException("Unknown passage scorer: " + name);
+		}
+	}
+
+	private static String zipf(Random random, String[] vocabulary) {
+		// Inverse transform sampling of a (roughly) Zipfian distribution.
+		final double x = Math.pow(vocabulary.length + 1, random.nextDouble()) - 1;
+		return vocabulary[Math.min(vocabulary.length - 1, (int) x)];
+	}
+
+	private static Query parse(String text) {
+		try (Analyzer analyzer = new EnglishAnalyzer()) {
+			return new QueryParser(QADataIndexer.BODY_FIELD, analyzer).parse(text);
+		} catch (ParseException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	private static Directory index(Iterator<QAData> records) throws IOException {
+		final Directory dir = new RAMDirectory();
+		final int numThreads = Runtime.getRuntime().availableProcessors();
+		try (Analyzer analyzer = new EnglishAnalyzer();
+				IndexWriter writer = new IndexWriter(dir,
+						QADataIndexer.newIndexWriterConfig(analyzer, numThreads).setRAMBufferSizeMB(64))) {
+			new QADataIndexer(writer, numThreads, 256).index(records);
+			writer.forceMerge(1);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+		return dir;
+	}
+
+	public IndexSearcher getSearcher() {
+		return searcher;
+	}
+
+	public int numQueries() {
+		return queries.length;
+	}
+
+	public Query getQuery(int i) {
+		return queries[i];
+	}
+
+	public TopDocs getTopDocs(int i) {
+		return topDocs[i];
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+		dir.close();
+	}
+
+}
@@ -0,0 +1,104 @@
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required byOCP applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.IntFunction;
+
+/**
+ * A passage searcher configured from benchmark parameters, searching the
+ * queries of a {@link BenchmarkCorpus} in a round-robin. The JMH benchmarks
+ * live in a named package, which cannot refer to the classes of the default
+ * package, so they create a fixture by reflection with
+ * {@link #create(Properties)} and only call it through {@link IntFunction}.
+ */
+public class BenchmarkFixture implements IntFunction<List<?>>, AutoCloseable {
+
+	private final BenchmarkCorpus corpus;
+	private final PassageSearcher passageSearcher;
+	private final int numPassages;
+	private final int passageLength;
+
+	private BenchmarkFixture(BenchmarkCorpus corpus, PassageSearcher passageSearcher, int numPassages,
+			int passageLength) {
+		this.corpus = corpus;
+		this.passageSearcher = passageSearcher;
+		this.numPassages = numPassages;
+		this.passageLength = passageLength;
+	}
+
+	/**
+	 * Creates a fixture from the following parameters: {@code searcher}
+	 * ({@code TermVectors} or {@code Snippets}), {@code docLength}, {@code topK},
+	 * {@code passageLength}, {@code overlapRatio}, {@code numSnippetsPerDoc},
+	 * {@code scorer} (the name of a {@link PassageScorer} constant,
+	 * {@code PROXIMITY} or {@code BM25}) and {@code earlyTermination} (whether to
+	 * wrap the searcher in an {@link EarlyTerminatingPassageSearcher}).
+	 */
+	public static BenchmarkFixture create(Properties params) throws IOException {
+		final BenchmarkCorpus corpus = BenchmarkCorpus.open(intParam(params, "docLength", 1000),
+				intParam(params, "topK", 10));
+		final int passageLength = intParam(params, "passageLength", 100);
+		final PassageScorer scorer = corpus.scorer(params.getProperty("scorer", "DOC_SCORE_AND_QUERY_TF"),
+				passageLength);
+		PassageSearcher passageSearcher;
+		switch (params.getProperty("searcher", "TermVectors")) {
+		case "TermVectors":
+			passageSearcher = new TermVectorsPassageSearcher(corpus.getSearcher(), QADataIndexer.BODY_FIELD,
+					Double.parseDouble(params.getProperty("overlapRatio", "0.1")), scorer);
+			break;
+		case "Snippets":
+			passageSearcher = new SnippetsPassageSearcher(corpus.getSearcher(), QADataIndexer.BODY_FIELD,
+					intParam(params, "numSnippetsPerDoc", 2), scorer);
+			break;
+		default:
+			corpus.close();
+			throw new IllegalArgumentException("Unknown passage searcher: " + params.getProperty("searcher"));
+		}
+		if (Boolean.parseBoolean(params.getProperty("earlyTermination", "false"))) {
+			passageSearcher = new EarlyTerminatingPassageSearcher(corpus.getSearcher(), QADataIndexer.BODY_FIELD,
+					passageSearcher, scorer);
+		}
+		return new BenchmarkFixture(corpus, passageSearcher, intParam(params, "numPassages", 3), passageLength);
+	}
+
+	private static int intParam(Properties params, String name, int defaultValue) {
+		final String value = params.getProperty(name);
+		return value == null ? defaultValue : Integer.parseInt(value);
+	}
+
+	/** Searches the passages of the i-th query (modulo the number of queries). */
+	@Override
+	public List<?> apply(int i) {
+		final int query = i % corpus.numQueries();
+		try {
+			return passageSearcher.search(corpus.getQuery(query), corpus.getTopDocs(query), numPassages,
+					passageLength);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		corpus.close();
+	}
+
+}
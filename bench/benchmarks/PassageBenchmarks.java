@@ -0,0 +1,45 @@
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required byOCP applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the passage search benchmarks with the GC profiler, so that the
+ * allocation rate is reported along with throughput and latency. Any JMH
+ * command line option may be given, e.g. {@code -p topK=100} or
+ * {@code -jvmArgs -Dcorpus=nfL6.json}.
+ */
+public class PassageBenchmarks {
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		final CommandLineOptions cmdOptions = new CommandLineOptions(args);
+		final OptionsBuilder options = new OptionsBuilder();
+		options.parent(cmdOptions).addProfiler(GCProfiler.class);
+		if (cmdOptions.getIncludes().isEmpty()) {
+			options.include(".*PassageSearcherBenchmark.*");
+		}
+		new Runner(options.build()).run();
+	}
+
+}
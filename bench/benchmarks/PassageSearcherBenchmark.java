@@ -0,0 +1,93 @@
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required byOCP applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package benchmarks;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Base class of the passage search benchmarks, holding the parameters which
+ * are common to all passage searchers and the fixture which runs the searches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public abstract class PassageSearcherBenchmark {
+
+	@Param({ "500", "5000" })
+	public int docLength;
+
+	@Param({ "10", "100" })
+	public int topK;
+
+	@Param({ "50", "200" })
+	public int passageLength;
+
+	@Param({ "BY_DOC_SCORE", "DOC_SCORE_AND_QUERY_TF", "PROXIMITY", "BM25" })
+	public String scorer;
+
+	@Param({ "false", "true" })
+	public boolean earlyTermination;
+
+	private IntFunction<List<?>> fixture;
+	private int nextQuery = 0;
+
+	/** Returns the parameters of the fixture, see BenchmarkFixture#create. */
+	protected Properties params() {
+		final Properties params = new Properties();
+		params.setProperty("docLength", Integer.toString(docLength));
+		params.setProperty("topK", Integer.toString(topK));
+		params.setProperty("passageLength", Integer.toString(passageLength));
+		params.setProperty("scorer", scorer);
+		params.setProperty("earlyTermination", Boolean.toString(earlyTermination));
+		return params;
+	}
+
+	@SuppressWarnings("unchecked")
+	protected void setUpFixture() throws Exception {
+		// The fixture lives in the default package, which cannot be imported.
+		fixture = (IntFunction<List<?>>) Class.forName("BenchmarkFixture").getMethod("create", Properties.class)
+				.invoke(null, params());
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		((AutoCloseable) fixture).close();
+	}
+
+	protected List<?> searchNext() {
+		return fixture.apply(nextQuery++);
+	}
+
+}
@@ -0,0 +1,51 @@
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required byOCP applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package benchmarks;
+
+import java.util.List;
+import java.util.Properties;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+/** Benchmarks SnippetsPassageSearcher. */
+public class SnippetsPassageSearcherBenchmark extends PassageSearcherBenchmark {
+
+	@Param({ "1", "3" })
+	public int numSnippetsPerDoc;
+
+	@Override
+	protected Properties params() {
+		final Properties params = super.params();
+		params.setProperty("searcher", "Snippets");
+		params.setProperty("numSnippetsPerDoc", Integer.toString(numSnippetsPerDoc));
+		return params;
+	}
+
+	@Setup
+	public void setUp() throws Exception {
+		setUpFixture();
+	}
+
+	@Benchmark
+	public List<?> search() {
+		return searchNext();
+	}
+
+}
@@ -0,0 +1,184 @@
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required byOCP applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+
+/**
+ * A {@link PassageScorer} which scores passages with BM25, treating each
+ * passage as a document of its own: query terms are weighted by their IDF in
+ * the index, and passage lengths (in characters) are normalized by an average
+ * passage length.
+ * <p>
+ * Term IDFs are computed once per term and reused for the lifetime of the
+ * scorer, so a scorer should be created per {@link IndexReader} (i.e. per
+ * reader generation). Instances are thread-safe.
+ */
+public class BM25PassageScorer implements PassageScorer {
+
+	/** The default k1 of BM25. */
+	public static final double DEFAULT_K1 = 1.2;
+
+	/** The default b of BM25. */
+	public static final double DEFAULT_B = 0.75;
+
+	private final IndexReader reader;
+	private final String field;
+	private final double averagePassageLength;
+	private final double k1;
+	private final double b;
+	private final long docCount;
+	private final ConcurrentMap<String, Double> idfs = new ConcurrentHashMap<>();
+	// The weights of the last seen term table, which passages of a query share.
+	private volatile TermWeights lastWeights = new TermWeights(new String[0], new double[0]);
+
+	/**
+	 * Constructs a scorer with the default k1 and b.
+	 *
+	 * @param reader
+	 *            the {@link IndexReader} to compute term statistics from.
+	 * @param field
+	 *            the field of the passages.
+	 * @param averagePassageLength
+	 *            the average length of the passages, in characters (typically the
+	 *            passage length searched with).
+	 */
+	public BM25PassageScorer(IndexReader reader, String field, double averagePassageLength) {
+		this(reader, field, averagePassageLength, DEFAULT_K1, DEFAULT_B);
+	}
+
+	/**
+	 * Constructs a scorer with the given BM25 parameters.
+	 *
+	 * @param reader
+	 *            the {@link IndexReader} to compute term statistics from.
+	 * @param field
+	 *            the field of the passages.
+	 * @param averagePassageLength
+	 *            the average length of the passages, in characters (typically the
+	 *            passage length searched with).
+	 * @param k1
+	 *            controls the saturation of term frequencies.
+	 * @param b
+	 *            controls to what degree passage lengths are normalized.
+	 */
+	public BM25PassageScorer(IndexReader reader, String field, double averagePassageLength, double k1, double b) {
+		if (averagePassageLength <= 0) {
+			throw new IllegalArgumentException("averagePassageLength must be positive: " + averagePassageLength);
+		}
+		this.reader = reader;
+		this.field = field;
+		this.averagePassageLength = averagePassageLength;
+		this.k1 = k1;
+		this.b = b;
+		try {
+			final long fieldDocCount = reader.getDocCount(field);
+			this.docCount = fieldDocCount == -1 ? reader.maxDoc() : fieldDocCount;
+		} catch (IOException e) {
+			throw new IllegalStateException(Utils.format("Failed to read the statistics of field [%s]", field), e);
+		}
+	}
+
+	@Override
+	public void score(List<Passage> passages) throws IOException {
+		TermWeights weights = lastWeights;
+		int[] tfs = new int[weights.idfs.length];
+		for (final Passage passage : passages) {
+			final String[] terms = passage.getTermTable();
+			if (weights.terms != terms) {
+				weights = weights(terms);
+				lastWeights = weights;
+			}
+			if (tfs.length < terms.length) {
+				tfs = new int[terms.length];
+			}
+			final int numHits = passage.getNumHits();
+			for (int i = 0; i < numHits; i++) {
+				tfs[passage.getHitTerm(i)]++;
+			}
+			final double lengthNorm = k1
+					* (1 - b + b * (passage.getEndOffset() - passage.getStartOffset()) / averagePassageLength);
+			final double[] termIdfs = weights.idfs;
+			double score = 0;
+			for (int t = 0; t < terms.length; t++) {
+				final int tf = tfs[t];
+				if (tf != 0) {
+					score += termIdfs[t] * tf * (k1 + 1) / (tf + lengthNorm);
+					tfs[t] = 0;
+				}
+			}
+			passage.setScore(score);
+		}
+	}
+
+	/**
+	 * A passage has at most as many occurrences of a term as its document, and its
+	 * length normalization is at least {@code k1 * (1 - b)}.
+	 */
+	@Override
+	public double maxScore(double docScore, String[] terms, int[] termFreqs) throws IOException {
+		TermWeights weights = lastWeights;
+		if (weights.terms != terms) {
+			weights = weights(terms);
+			lastWeights = weights;
+		}
+		final double minLengthNorm = k1 * (1 - b);
+		double maxScore = 0;
+		for (int t = 0; t < terms.length; t++) {
+			final int tf = termFreqs[t];
+			if (tf != 0) {
+				maxScore += weights.idfs[t] * tf * (k1 + 1) / (tf + minLengthNorm);
+			}
+		}
+		return maxScore;
+	}
+
+	private TermWeights weights(String[] terms) throws IOException {
+		final double[] termIdfs = new double[terms.length];
+		for (int t = 0; t < terms.length; t++) {
+			Double idf = idfs.get(terms[t]);
+			if (idf == null) {
+				idf = idf(reader.docFreq(new Term(field, terms[t])));
+				idfs.put(terms[t], idf);
+			}
+			termIdfs[t] = idf;
+		}
+		return new TermWeights(terms, termIdfs);
+	}
+
+	private double idf(int docFreq) {
+		return Math.log(1 + (docCount - docFreq + 0.5) / (docFreq + 0.5));
+	}
+
+	/** The IDFs of the terms of a term table. */
+	private static class TermWeights {
+		final String[] terms;
+		final double[] idfs;
+
+		TermWeights(String[] terms, double[] idfs) {
+			this.terms = terms;
+			this.idfs = idfs;
+		}
+	}
+
+}
@@ -0,0 +1,218 @@
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required byOCP applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ConstantScoreScorer;
+import org.apache.lucene.search.ConstantScoreWeight;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.search.join.BitSetProducer;
+import org.apache.lucene.search.join.QueryBitSetProducer;
+import org.apache.lucene.search.join.ScoreMode;
+import org.apache.lucene.search.join.ToParentBlockJoinQuery;
+import org.apache.lucene.util.BitSet;
+import org.apache.lucene.util.BitSetIterator;
+import org.apache.lucene.util.FixedBitSet;
+
+/**
+ * A {@link PassageSearcher} over an index of passage blocks written with
+ * {@link PassageBlocks}. Passages are searched directly, as child documents,
+ * and scored by Lucene, so no windowing happens at query time. Documents can be
+ * ranked by their best passage with {@link #toParentQuery(Query)}, or by their
+ * whole body with {@link PassageBlocks#recordsOnly(Query)}. The top documents
+ * must be parents: a plain query also matches passage documents, which have no
+ * passages of their own.
+ * <p>
+ * Since passages were cut at index time, the passageLength argument of
+ * {@link #search(Query, TopDocs, int, int)} is ignored.
+ */
+public class BlockJoinPassageSearcher implements PassageSearcher {
+
+	private static final BitSetProducer PARENTS_FILTER = new QueryBitSetProducer(PassageBlocks.PARENTS);
+
+	private final IndexSearcher searcher;
+	private final String field;
+
+	/**
+	 * Sole constructor.
+	 *
+	 * @param searcher
+	 *            the {@link IndexSearcher} to use for searching passages.
+	 * @param field
+	 *            the field of the passages to search.
+	 */
+	public BlockJoinPassageSearcher(IndexSearcher searcher, String field) {
+		this.searcher = searcher;
+		this.field = field;
+	}
+
+	/**
+	 * Returns a {@link Query} which matches the parent documents of the passages
+	 * which match the given query, scored by their best-scoring passage.
+	 */
+	public static Query toParentQuery(Query passageQuery) {
+		return new ToParentBlockJoinQuery(passagesOnly(passageQuery), PARENTS_FILTER, ScoreMode.Max);
+	}
+
+	private static Query passagesOnly(Query query) {
+		return new BooleanQuery.Builder().add(query, Occur.MUST).add(PassageBlocks.PASSAGES, Occur.FILTER).build();
+	}
+
+	@Override
+	public List<Passage> search(Query query, TopDocs topDocs, int numPassages, int passageLength) throws IOException {
+		if (numPassages <= 0 || topDocs.scoreDocs.length == 0) {
+			return Collections.emptyList();
+		}
+		final Map<Integer, Float> parentScores = new HashMap<>();
+		for (final ScoreDoc sd : topDocs.scoreDocs) {
+			parentScores.put(sd.doc, sd.score);
+		}
+
+		// Let Lucene find the top-scoring passages among the children of the top
+		// documents only.
+		final TopScoreDocCollector topPassages = TopScoreDocCollector.create(numPassages);
+		final Query childrenQuery = new BooleanQuery.Builder().add(passagesOnly(query), Occur.MUST)
+				.add(new ChildrenQuery(topDocs.scoreDocs), Occur.FILTER).build();
+		searcher.search(childrenQuery, topPassages);
+
+		final QueryTermTable termTable = QueryTermTable.of(query, searcher, field);
+		final List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+		final TopPassagesCollector collector = new TopPassagesCollector(numPassages);
+		for (final ScoreDoc sd : topPassages.topDocs().scoreDocs) {
+			final LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(sd.doc, leaves));
+			final int parent = leaf.docBase + PARENTS_FILTER.getBitSet(leaf).nextSetBit(sd.doc - leaf.docBase);
+			final Document child = searcher.doc(sd.doc);
+			final int startOffset = child.getField(PassageBlocks.START_OFFSET_FIELD).numericValue().intValue();
+			final Passage passage = new Passage().setDocID(child.get(QADataIndexer.ID_FIELD)).setLuceneDocID(parent)
+					.setDocScore(parentScores.get(parent)).setScore(sd.score).setText(child.get(field))
+					.setStartOffset(startOffset)
+					.setEndOffset(child.getField(PassageBlocks.END_OFFSET_FIELD).numericValue().intValue())
+					.setTermTable(termTable.getTexts());
+			addHits(passage, leaf.reader(), sd.doc - leaf.docBase, startOffset, termTable);
+			collector.collect(passage);
+		}
+		return collector.getTopPassages();
+	}
+
+	/**
+	 * Matches the children of the given parent documents, which are the documents
+	 * between each parent and the previous one. Documents which are not parents
+	 * have no children.
+	 */
+	private class ChildrenQuery extends Query {
+		private final Map<Integer, FixedBitSet> leafChildren = new HashMap<>();
+
+		ChildrenQuery(ScoreDoc[] parents) throws IOException {
+			final List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+			for (final ScoreDoc sd : parents) {
+				final LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(sd.doc, leaves));
+				final BitSet leafParents = PARENTS_FILTER.getBitSet(leaf);
+				final int parent = sd.doc - leaf.docBase;
+				if (leafParents == null || !leafParents.get(parent)) {
+					continue;
+				}
+				final int firstChild = parent == 0 ? 0 : leafParents.prevSetBit(parent - 1) + 1;
+				if (firstChild < parent) {
+					leafChildren.computeIfAbsent(leaf.ord, ord -> new FixedBitSet(leaf.reader().maxDoc()))
+							.set(firstChild, parent);
+				}
+			}
+		}
+
+		@Override
+		public Weight createWeight(IndexSearcher searcher, boolean needsScores) throws IOException {
+			return new ConstantScoreWeight(this) {
+				@Override
+				public Scorer scorer(LeafReaderContext context) throws IOException {
+					final FixedBitSet children = leafChildren.get(context.ord);
+					if (children == null) {
+						return null;
+					}
+					return new ConstantScoreScorer(this, score(),
+							new BitSetIterator(children, children.cardinality()));
+				}
+			};
+		}
+
+		@Override
+		public String toString(String field) {
+			return "ChildrenQuery";
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return this == obj;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(this);
+		}
+	}
+
+	/**
+	 * Adds the query terms' hits to a passage, from the postings of its child
+	 * document. Nothing is added if the field was indexed without offsets.
+	 */
+	private void addHits(Passage passage, LeafReader reader, int childDoc, int startOffset, QueryTermTable termTable)
+			throws IOException {
+		final FieldInfo fieldInfo = reader.getFieldInfos().fieldInfo(field);
+		final Terms terms = reader.terms(field);
+		if (terms == null
+				|| fieldInfo.getIndexOptions().compareTo(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS) < 0) {
+			return;
+		}
+		final TermsEnum termsEnum = terms.iterator();
+		for (int termOrd = 0; termOrd < termTable.size(); termOrd++) {
+			if (!termsEnum.seekExact(termTable.getTerm(termOrd).bytes())) {
+				continue; // query term not found in segment.
+			}
+			final PostingsEnum postings = termsEnum.postings(null, PostingsEnum.OFFSETS);
+			if (postings.advance(childDoc) != childDoc) {
+				continue; // query term not found in passage.
+			}
+			for (int i = 0; i < postings.freq(); i++) {
+				postings.nextPosition();
+				// Passage offsets are relative to the passage, make them relative to the doc.
+				passage.addHit(termOrd, startOffset + postings.startOffset(), startOffset + postings.endOffset());
+			}
+		}
+	}
+
+}
@@ -0,0 +1,249 @@
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required byOCP applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.AlreadyClosedException;
+
+/**
+ * A {@link PassageSearcher} which caches the passages returned by another
+ * searcher in a size-bounded, least-recently-used {@link Cache}. Entries are
+ * keyed on the query, the top documents and their scores, the passage
+ * parameters, the reader which was searched and the configuration of the
+ * wrapped searcher, and are dropped when the reader is closed.
+ * <p>
+ * The returned lists and their passages are shared between callers, possibly
+ * on several threads, and must not be modified.
+ */
+public class CachingPassageSearcher implements PassageSearcher {
+
+	private final PassageSearcher in;
+	private final IndexReader reader;
+	private final Object searcherKey;
+	private final Cache cache;
+
+	/**
+	 * Sole constructor.
+	 *
+	 * @param in
+	 *            the {@link PassageSearcher} whose results are cached.
+	 * @param reader
+	 *            the {@link IndexReader} which the wrapped searcher searches.
+	 * @param searcherKey
+	 *            identifies the configuration of the wrapped searcher (e.g. its
+	 *            class, field and {@link PassageScorer}), so that a cache can be
+	 *            shared by differently configured searchers.
+	 * @param cache
+	 *            the {@link Cache} to store passages in.
+	 */
+	public CachingPassageSearcher(PassageSearcher in, IndexReader reader, Object searcherKey, Cache cache) {
+		this.in = in;
+		this.reader = reader;
+		this.searcherKey = searcherKey;
+		this.cache = cache;
+	}
+
+	@Override
+	public List<Passage> search(Query query, TopDocs topDocs, int numPassages, int passageLength) throws IOException {
+		return search(query, topDocs, numPassages, passageLength, PassageSearchMetrics.NONE);
+	}
+
+	/**
+	 * {@inheritDoc} Only cache misses reach the wrapped searcher, so cache hits
+	 * record nothing.
+	 */
+	@Override
+	public List<Passage> search(Query query, TopDocs topDocs, int numPassages, int passageLength,
+			PassageSearchMetrics metrics) throws IOException {
+		final Key key = new Key(reader.getCombinedCoreAndDeletesKey(), searcherKey, query, topDocs, numPassages,
+				passageLength);
+		List<Passage> passages = cache.get(key);
+		if (passages == null) {
+			passages = Collections.unmodifiableList(in.search(query, topDocs, numPassages, passageLength, metrics));
+			cache.put(key, passages, reader);
+		}
+		return passages;
+	}
+
+	/**
+	 * A size-bounded, least-recently-used cache of passages, which can be shared
+	 * by many {@link CachingPassageSearcher}s and across reader reopens.
+	 */
+	public static class Cache {
+
+		private final int maxSize;
+		private final Map<Key, List<Passage>> entries;
+		private final Map<Object, Boolean> registeredReaders = new WeakHashMap<>();
+
+		private final AtomicLong hitCount = new AtomicLong();
+		private final AtomicLong missCount = new AtomicLong();
+		private final AtomicLong evictionCount = new AtomicLong();
+
+		/**
+		 * Sole constructor.
+		 *
+		 * @param maxSize
+		 *            the maximum number of entries in the cache.
+		 */
+		public Cache(int maxSize) {
+			this.maxSize = maxSize;
+			this.entries = new LinkedHashMap<Key, List<Passage>>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Key, List<Passage>> eldest) {
+					if (size() > Cache.this.maxSize) {
+						evictionCount.incrementAndGet();
+						return true;
+					}
+					return false;
+				}
+			};
+		}
+
+		synchronized List<Passage> get(Key key) {
+			final List<Passage> passages = entries.get(key);
+			if (passages == null) {
+				missCount.incrementAndGet();
+			} else {
+				hitCount.incrementAndGet();
+			}
+			return passages;
+		}
+
+		/**
+		 * Adds the passages of a search, unless the reader which was searched has
+		 * been closed since, as the entry would then outlive the invalidation of
+		 * the reader's entries.
+		 */
+		synchronized void put(Key key, List<Passage> passages, IndexReader reader) {
+			// The reader's close listeners run once its ref count drops to 0, and wait
+			// for this lock to invalidate the reader's entries, including this one.
+			if (reader.getRefCount() <= 0) {
+				return;
+			}
+			if (registeredReaders.put(key.readerKey, Boolean.TRUE) == null) {
+				// Drop the reader's entries once it is closed, e.g. after it was reopened.
+				try {
+					reader.addReaderClosedListener(r -> invalidate(key.readerKey));
+				} catch (AlreadyClosedException e) {
+					registeredReaders.remove(key.readerKey);
+					return;
+				}
+			}
+			entries.put(key, passages);
+		}
+
+		/** Removes all the entries of the reader with the given core key. */
+		synchronized void invalidate(Object readerKey) {
+			registeredReaders.remove(readerKey);
+			for (final Iterator<Key> it = entries.keySet().iterator(); it.hasNext();) {
+				if (it.next().readerKey == readerKey) {
+					it.remove();
+				}
+			}
+		}
+
+		/** Removes all the entries. */
+		public synchronized void clear() {
+			entries.clear();
+		}
+
+		public synchronized int size() {
+			return entries.size();
+		}
+
+		public long getHitCount() {
+			return hitCount.get();
+		}
+
+		public long getMissCount() {
+			return missCount.get();
+		}
+
+		public long getEvictionCount() {
+			return evictionCount.get();
+		}
+
+		@Override
+		public String toString() {
+			return Utils.format("size=%d, hits=%d, misses=%d, evictions=%d", size(), getHitCount(), getMissCount(),
+					getEvictionCount());
+		}
+	}
+
+	/** The key of a cache entry. */
+	static final class Key {
+		final Object readerKey;
+		final Object searcherKey;
+		final Query query;
+		final int[] docs;
+		final float[] scores;
+		final int numPassages;
+		final int passageLength;
+		final int hashCode;
+
+		Key(Object readerKey, Object searcherKey, Query query, TopDocs topDocs, int numPassages, int passageLength) {
+			this.readerKey = readerKey;
+			this.searcherKey = searcherKey;
+			this.query = query;
+			final ScoreDoc[] scoreDocs = topDocs.scoreDocs;
+			this.docs = new int[scoreDocs.length];
+			this.scores = new float[scoreDocs.length];
+			for (int i = 0; i < scoreDocs.length; i++) {
+				docs[i] = scoreDocs[i].doc;
+				scores[i] = scoreDocs[i].score;
+			}
+			this.numPassages = numPassages;
+			this.passageLength = passageLength;
+			this.hashCode = Objects.hash(System.identityHashCode(readerKey), searcherKey, query,
+					Arrays.hashCode(docs), Arrays.hashCode(scores), numPassages, passageLength);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			final Key other = (Key) obj;
+			return readerKey == other.readerKey && Objects.equals(searcherKey, other.searcherKey)
+					&& query.equals(other.query) && Arrays.equals(docs, other.docs)
+					&& Arrays.equals(scores, other.scores) && numPassages == other.numPassages
+					&& passageLength == other.passageLength;
+		}
+	}
+
+}
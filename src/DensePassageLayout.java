@@ -0,0 +1,186 @@
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required byOCP applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.util.ArrayUtil;
+
+/**
+ * Lays out passages of at most passageLength characters around the densest
+ * runs of query term occurrences in a document, rather than at fixed offsets.
+ * <p>
+ * The hits of a document, ordered by offset, are swept once with two pointers:
+ * the window of hit i holds all the hits from i which end within passageLength
+ * characters of hit i's start. Among the windows which start inside the current
+ * window, the one with the most hits is picked, and the sweep resumes after it,
+ * so the picked windows never share hits and do not overlap.
+ */
+public class DensePassageLayout {
+
+	private final int passageLength;
+
+	/**
+	 * Sole constructor.
+	 *
+	 * @param passageLength
+	 *            the maximum length, in characters, of the passages.
+	 */
+	public DensePassageLayout(int passageLength) {
+		this.passageLength = passageLength;
+	}
+
+	/**
+	 * Returns the passages of a document, with their offsets and hits set. A
+	 * passage starts at its first hit and extends up to passageLength characters,
+	 * up to the start of the next passage or the end of the text. A document
+	 * without hits gets a single passage at its beginning.
+	 */
+	public List<Passage> passages(String docID, int luceneDocID, double docScore, int textLength,
+			String[] termTable, Hits hits) {
+		final List<Passage> docPassages = new ArrayList<>();
+		final int numHits = hits.sort();
+		if (numHits == 0) {
+			docPassages.add(new Passage().setDocID(docID).setLuceneDocID(luceneDocID).setDocScore(docScore)
+					.setStartOffset(0).setEndOffset(Math.min(passageLength, textLength)).setTermTable(termTable));
+			return docPassages;
+		}
+		final int[] h = hits.hits;
+		int i = 0;
+		int end = 0; // the end (exclusive) of the window of hit i.
+		int previousHitsEnd = 0; // the largest end offset of the previous passage's hits.
+		while (i < numHits) {
+			// Pick the densest window among those starting within the window of i.
+			end = windowEnd(h, numHits, i, Math.max(end, i + 1));
+			int best = i;
+			int bestEnd = end;
+			int windowEnd = end;
+			for (int j = i + 1; j < end; j++) {
+				windowEnd = windowEnd(h, numHits, j, windowEnd);
+				if (windowEnd - j > bestEnd - best) {
+					best = j;
+					bestEnd = windowEnd;
+				}
+			}
+			final int start = h[3 * best + 1];
+			final Passage passage = new Passage().setDocID(docID).setLuceneDocID(luceneDocID).setDocScore(docScore)
+					.setStartOffset(start).setEndOffset(Math.min(start + passageLength, textLength))
+					.setTermTable(termTable);
+			if (!docPassages.isEmpty()) {
+				// Keep the previous passage's hits inside it, even if they overlap this one's.
+				final Passage previous = docPassages.get(docPassages.size() - 1);
+				previous.setEndOffset(Math.max(previousHitsEnd, Math.min(previous.getEndOffset(), start)));
+			}
+			previousHitsEnd = 0;
+			for (int k = best; k < bestEnd; k++) {
+				passage.addHit(h[3 * k], h[3 * k + 1], h[3 * k + 2]);
+				previousHitsEnd = Math.max(previousHitsEnd, h[3 * k + 2]);
+			}
+			docPassages.add(passage);
+			i = bestEnd;
+			end = bestEnd;
+		}
+		return docPassages;
+	}
+
+	/**
+	 * Returns the end (exclusive) of the window of hit i, advancing from the
+	 * given end, which must not be before the end of any earlier window.
+	 */
+	private int windowEnd(int[] h, int numHits, int i, int from) {
+		final int limit = h[3 * i + 1] + passageLength;
+		int end = Math.max(from, i + 1); // a hit always belongs to its own window.
+		while (end < numHits && h[3 * end + 2] <= limit) {
+			end++;
+		}
+		return end;
+	}
+
+	/**
+	 * The query term occurrences of a document. Hits are expected to be added
+	 * term by term, each term's in order of their offsets, as they are read from
+	 * term vectors or postings; they are then ordered by merging those runs.
+	 */
+	public static class Hits {
+		private int[] hits = new int[3 * 16]; // (term ord, start offset, end offset)
+		private int size = 0;
+		private int[] runStarts = new int[8];
+		private int numRuns = 0;
+
+		/** Adds an occurrence of the term with the given ordinal. */
+		public void add(int termOrd, int startOffset, int endOffset) {
+			if (hits.length < 3 * (size + 1)) {
+				hits = ArrayUtil.grow(hits, 3 * (size + 1));
+			}
+			if (size == 0 || compare(hits, size - 1, startOffset, endOffset) > 0) {
+				// A new run of ordered hits begins.
+				if (numRuns == runStarts.length) {
+					runStarts = ArrayUtil.grow(runStarts, numRuns + 1);
+				}
+				runStarts[numRuns++] = size;
+			}
+			hits[3 * size] = termOrd;
+			hits[3 * size + 1] = startOffset;
+			hits[3 * size + 2] = endOffset;
+			size++;
+		}
+
+		/** Orders the hits by their offsets, and returns their number. */
+		int sort() {
+			if (numRuns <= 1) {
+				return size;
+			}
+			// Merge adjacent runs pairwise until a single run is left.
+			int[] from = hits;
+			int[] to = new int[hits.length];
+			int[] starts = runStarts;
+			while (numRuns > 1) {
+				int merged = 0;
+				for (int r = 0; r < numRuns; r += 2) {
+					final int lo = starts[r];
+					final int mid = r + 1 < numRuns ? starts[r + 1] : size;
+					final int hi = r + 2 < numRuns ? starts[r + 2] : size;
+					merge(from, to, lo, mid, hi);
+					starts[merged++] = lo;
+				}
+				numRuns = merged;
+				final int[] tmp = from;
+				from = to;
+				to = tmp;
+			}
+			hits = from;
+			return size;
+		}
+
+		private static void merge(int[] from, int[] to, int lo, int mid, int hi) {
+			int i = lo;
+			int j = mid;
+			for (int k = lo; k < hi; k++) {
+				final boolean left = j == hi || (i < mid && compare(from, i, from[3 * j + 1], from[3 * j + 2]) <= 0);
+				final int src = left ? i++ : j++;
+				System.arraycopy(from, 3 * src, to, 3 * k, 3);
+			}
+		}
+
+		private static int compare(int[] hits, int i, int startOffset, int endOffset) {
+			final int cmp = Integer.compare(hits[3 * i + 1], startOffset);
+			return cmp != 0 ? cmp : Integer.compare(hits[3 * i + 2], endOffset);
+		}
+	}
+
+}
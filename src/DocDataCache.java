@@ -0,0 +1,278 @@
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required byOCP applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * A memory-bounded, least-recently-used cache of decoded per-document data: the
+ * ID, the body text and the offsets of every term of the document's term
+ * vector. Entries are keyed by segment core and doc ID, so they are shared by
+ * all the readers which share a segment, and they are released when the
+ * segment's core is closed (e.g. after it was merged away). The cache is
+ * weighed by the estimated bytes of its entries rather than by their number.
+ */
+public class DocDataCache implements Accountable {
+
+	private static final Set<String> ID_AND_TEXT = new HashSet<>(
+			Arrays.asList(QADataIndexer.ID_FIELD, QADataIndexer.BODY_FIELD));
+
+	private final long maxBytes;
+	private final Map<Key, DocData> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private final Set<Object> registeredCores = Collections.newSetFromMap(new WeakHashMap<>());
+	private long ramBytesUsed = 0;
+
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	/**
+	 * Sole constructor.
+	 *
+	 * @param maxBytes
+	 *            the maximum estimated size, in bytes, of the cached data.
+	 */
+	public DocDataCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Returns the data of a document, decoding it from the stored fields and the
+	 * term vector of the given field if it is not cached.
+	 */
+	public DocData get(IndexSearcher searcher, int doc, String field) throws IOException {
+		final List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+		final LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(doc, leaves));
+		final LeafReader reader = leaf.reader();
+		final Key key = new Key(reader.getCoreCacheKey(), doc - leaf.docBase, field);
+		DocData data;
+		synchronized (this) {
+			data = entries.get(key);
+		}
+		if (data != null) {
+			hitCount.incrementAndGet();
+			return data;
+		}
+		missCount.incrementAndGet();
+		// Decode outside the lock, concurrent loads of the same document are rare and
+		// harmless.
+		data = load(searcher, reader, doc, key.doc, field);
+		put(key, data, reader);
+		return data;
+	}
+
+	private static DocData load(IndexSearcher searcher, LeafReader reader, int doc, int leafDoc, String field)
+			throws IOException {
+		final Document document = searcher.doc(doc, ID_AND_TEXT);
+		final Terms terms = reader.getTermVector(leafDoc, field);
+		if (terms == null) {
+			throw new IllegalStateException(
+					Utils.format("Document [%d] does not have term vectors indexed for field [%s]", doc, field));
+		}
+		final Map<String, int[]> termOffsets = new HashMap<>();
+		final TermsEnum termsEnum = terms.iterator();
+		PostingsEnum postings = null;
+		BytesRef term;
+		while ((term = termsEnum.next()) != null) {
+			postings = termsEnum.postings(postings, PostingsEnum.OFFSETS);
+			postings.nextDoc(); // only one document
+			final int[] offsets = new int[2 * postings.freq()];
+			for (int i = 0; i < postings.freq(); i++) {
+				postings.nextPosition();
+				offsets[2 * i] = postings.startOffset();
+				offsets[2 * i + 1] = postings.endOffset();
+			}
+			termOffsets.put(term.utf8ToString(), offsets);
+		}
+		return new DocData(document.get(QADataIndexer.ID_FIELD), document.get(QADataIndexer.BODY_FIELD),
+				termOffsets);
+	}
+
+	/**
+	 * Adds the data of a document, unless its segment core was closed while it
+	 * was loaded, as the entry would then outlive the invalidation of the core's
+	 * entries.
+	 */
+	private synchronized void put(Key key, DocData data, LeafReader reader) {
+		// A registered core is open, or its close listener is waiting for this lock
+		// to invalidate its entries, including this one.
+		if (!registeredCores.contains(key.coreKey)) {
+			// The core's listener was never registered, or already ran. An open reader
+			// keeps its core open, while a closed one may have been its last user.
+			if (reader.getRefCount() <= 0) {
+				return;
+			}
+			try {
+				reader.addCoreClosedListener(this::invalidate);
+			} catch (AlreadyClosedException e) {
+				return;
+			}
+			registeredCores.add(key.coreKey);
+		}
+		final DocData previous = entries.put(key, data);
+		if (previous != null) {
+			ramBytesUsed -= previous.ramBytesUsed();
+		}
+		ramBytesUsed += data.ramBytesUsed();
+		// Evict the least recently used entries until the cache fits.
+		for (final Iterator<DocData> it = entries.values().iterator(); ramBytesUsed > maxBytes && it.hasNext();) {
+			ramBytesUsed -= it.next().ramBytesUsed();
+			it.remove();
+			evictionCount.incrementAndGet();
+		}
+	}
+
+	/** Removes all the entries of the segment core with the given key. */
+	private synchronized void invalidate(Object coreKey) {
+		registeredCores.remove(coreKey);
+		for (final Iterator<Map.Entry<Key, DocData>> it = entries.entrySet().iterator(); it.hasNext();) {
+			final Map.Entry<Key, DocData> entry = it.next();
+			if (entry.getKey().coreKey == coreKey) {
+				ramBytesUsed -= entry.getValue().ramBytesUsed();
+				it.remove();
+			}
+		}
+	}
+
+	/** Removes all the entries. */
+	public synchronized void clear() {
+		entries.clear();
+		ramBytesUsed = 0;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	@Override
+	public synchronized long ramBytesUsed() {
+		return ramBytesUsed;
+	}
+
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	@Override
+	public String toString() {
+		return Utils.format("size=%d, bytes=%d, hits=%d, misses=%d, evictions=%d", size(), ramBytesUsed(),
+				getHitCount(), getMissCount(), getEvictionCount());
+	}
+
+	/** The decoded data of a document. */
+	public static class DocData implements Accountable {
+		private static final int[] NO_OFFSETS = new int[0];
+
+		public final String id;
+		public final String text;
+		private final Map<String, int[]> termOffsets;
+		private final long ramBytesUsed;
+
+		DocData(String id, String text, Map<String, int[]> termOffsets) {
+			this.id = id;
+			this.text = text;
+			this.termOffsets = termOffsets;
+			long bytes = 3 * RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + sizeOf(id) + sizeOf(text);
+			for (final Map.Entry<String, int[]> entry : termOffsets.entrySet()) {
+				// A HashMap entry is roughly an object with four fields.
+				bytes += RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + 4 * RamUsageEstimator.NUM_BYTES_OBJECT_REF
+						+ sizeOf(entry.getKey()) + RamUsageEstimator.sizeOf(entry.getValue());
+			}
+			this.ramBytesUsed = bytes;
+		}
+
+		/**
+		 * Returns the (start, end) offsets of the term's occurrences, as consecutive
+		 * pairs in position order.
+		 */
+		public int[] offsets(String term) {
+			final int[] offsets = termOffsets.get(term);
+			return offsets == null ? NO_OFFSETS : offsets;
+		}
+
+		@Override
+		public long ramBytesUsed() {
+			return ramBytesUsed;
+		}
+
+		private static long sizeOf(String s) {
+			return s == null ? 0
+					: RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + RamUsageEstimator.NUM_BYTES_ARRAY_HEADER
+							+ (long) Character.BYTES * s.length();
+		}
+	}
+
+	private static final class Key {
+		final Object coreKey;
+		final int doc;
+		final String field;
+
+		Key(Object coreKey, int doc, String field) {
+			this.coreKey = coreKey;
+			this.doc = doc;
+			this.field = field;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (31 * System.identityHashCode(coreKey) + doc) + field.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			final Key other = (Key) obj;
+			return coreKey == other.coreKey && doc == other.doc && Objects.equals(field, other.field);
+		}
+	}
+
+}
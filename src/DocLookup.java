@@ -0,0 +1,127 @@
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required byOCP applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.search.IndexSearcher;
+
+/**
+ * Looks up the ID and text length of documents, preferably from doc values so
+ * that stored fields need not be decompressed for documents whose passages are
+ * not returned, and materializes the text of the returned passages.
+ * <p>
+ * A lookup is meant to serve a single search or batch: the texts which the stored
+ * fields fallback loads are kept until then, so that they are not loaded again.
+ */
+public class DocLookup {
+
+	private static final Set<String> ID_AND_TEXT = new HashSet<>(
+			Arrays.asList(QADataIndexer.ID_FIELD, QADataIndexer.BODY_FIELD));
+	private static final Set<String> TEXT = Collections.singleton(QADataIndexer.BODY_FIELD);
+
+	private final IndexSearcher searcher;
+	private final List<LeafReaderContext> leaves;
+	// texts loaded by the stored fields fallback of get, keyed by doc ID, which
+	// may be called from several threads.
+	private final Map<Integer, String> loadedTexts = new ConcurrentHashMap<>();
+
+	public DocLookup(IndexSearcher searcher) {
+		this.searcher = searcher;
+		this.leaves = searcher.getIndexReader().leaves();
+	}
+
+	/**
+	 * Returns the ID and text length of a document. The text itself is only
+	 * loaded if the index does not have the ID and length doc values.
+	 */
+	public Doc get(int doc) throws IOException {
+		final LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(doc, leaves));
+		final LeafReader leafReader = leaf.reader();
+		final SortedDocValues ids = leafReader.getSortedDocValues(QADataIndexer.ID_FIELD);
+		final NumericDocValues lengths = leafReader.getNumericDocValues(QADataIndexer.BODY_LENGTH_FIELD);
+		if (ids != null && lengths != null) {
+			final int leafDoc = doc - leaf.docBase;
+			final int ord = ids.getOrd(leafDoc);
+			if (ord != -1) {
+				return new Doc(ids.lookupOrd(ord).utf8ToString(), (int) lengths.get(leafDoc), null);
+			}
+		}
+		// Fallback to stored fields.
+		final Document document = searcher.doc(doc, ID_AND_TEXT);
+		final String text = document.get(QADataIndexer.BODY_FIELD);
+		loadedTexts.put(doc, text);
+		return new Doc(document.get(QADataIndexer.ID_FIELD), text.length(), text);
+	}
+
+	/** Returns the text of a document. */
+	public String text(int doc) throws IOException {
+		return searcher.doc(doc, TEXT).get(QADataIndexer.BODY_FIELD);
+	}
+
+	/**
+	 * Sets the text of the given passages, loading the text of each of their
+	 * documents once, unless {@link #get(int)} already loaded it. Returns the
+	 * number of characters of text loaded.
+	 */
+	public long materialize(List<Passage> passages) throws IOException {
+		final Map<Integer, String> texts = new HashMap<>(loadedTexts);
+		long loaded = 0;
+		for (final Passage passage : passages) {
+			if (passage.getText() != null) {
+				continue;
+			}
+			String text = texts.get(passage.getLuceneDocID());
+			if (text == null) {
+				text = text(passage.getLuceneDocID());
+				texts.put(passage.getLuceneDocID(), text);
+				loaded += text.length();
+			}
+			passage.setText(text.substring(passage.getStartOffset(), passage.getEndOffset()));
+		}
+		return loaded;
+	}
+
+	/** The ID and text length of a document. */
+	public static class Doc {
+		public final String id;
+		public final int textLength;
+		/** The document's text, or {@code null} if it was not loaded. */
+		public final String text;
+
+		public Doc(String id, int textLength, String text) {
+			this.id = id;
+			this.textLength = textLength;
+			this.text = text;
+		}
+	}
+
+}
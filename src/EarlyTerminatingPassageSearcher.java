@@ -0,0 +1,188 @@
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required byOCP applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+
+/**
+ * A {@link PassageSearcher} which skips the top documents whose passages cannot
+ * make it to the top. Each document's passage scores are bounded with
+ * {@link PassageScorer#maxScore}, from its score and the frequencies of the
+ * query terms in its postings, which are much cheaper to read than its term
+ * vector or text. Documents are then handed to the wrapped searcher in rounds,
+ * highest bound first and each round twice as large as the previous one, until
+ * no remaining document's bound reaches the score of the current k-th best
+ * passage.
+ * <p>
+ * The returned passages are the same as the wrapped searcher's, provided that
+ * it scores passages with the given {@link PassageScorer} and that the hits of
+ * a passage are occurrences of the query terms in the document. If the scorer
+ * cannot bound its scores, all the documents are searched at once.
+ */
+public class EarlyTerminatingPassageSearcher implements PassageSearcher {
+
+	private final IndexSearcher searcher;
+	private final String field;
+	private final PassageSearcher in;
+	private final PassageScorer passageScorer;
+
+	/**
+	 * Sole constructor.
+	 *
+	 * @param searcher
+	 *            the {@link IndexSearcher} to use for searching documents.
+	 * @param field
+	 *            the field from which passages are extracted, which must be
+	 *            indexed with frequencies.
+	 * @param in
+	 *            the {@link PassageSearcher} which extracts the passages.
+	 * @param passageScorer
+	 *            the {@link PassageScorer} which the wrapped searcher scores
+	 *            passages with.
+	 */
+	public EarlyTerminatingPassageSearcher(IndexSearcher searcher, String field, PassageSearcher in,
+			PassageScorer passageScorer) {
+		this.searcher = searcher;
+		this.field = field;
+		this.in = in;
+		this.passageScorer = passageScorer;
+	}
+
+	@Override
+	public List<Passage> search(Query query, TopDocs topDocs, int numPassages, int passageLength) throws IOException {
+		return search(query, topDocs, numPassages, passageLength, PassageSearchMetrics.NONE);
+	}
+
+	@Override
+	public List<Passage> search(Query query, TopDocs topDocs, int numPassages, int passageLength,
+			PassageSearchMetrics metrics) throws IOException {
+		// Per-document timings and counts are summed, and recorded once per search.
+		final PassageSearchProfile profile = new PassageSearchProfile();
+		final List<Passage> passages = searchPassages(query, topDocs, numPassages, passageLength, profile);
+		profile.recordTo(metrics);
+		return passages;
+	}
+
+	private List<Passage> searchPassages(Query query, TopDocs topDocs, int numPassages, int passageLength,
+			PassageSearchMetrics metrics) throws IOException {
+		final ScoreDoc[] scoreDocs = topDocs.scoreDocs;
+		final long start = System.nanoTime();
+		final double[] maxScores = maxScores(QueryTermTable.of(query, searcher, field), scoreDocs);
+		// Order the documents by decreasing bound, and then by rank.
+		final Integer[] order = new Integer[scoreDocs.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (i, j) -> {
+			final int cmp = Double.compare(maxScores[j], maxScores[i]);
+			return cmp != 0 ? cmp : Integer.compare(i, j);
+		});
+		metrics.record(PassageSearchMetrics.Stage.BOUNDS, System.nanoTime() - start);
+		if (order.length == 0 || maxScores[order[0]] == Double.POSITIVE_INFINITY) {
+			return in.search(query, topDocs, numPassages, passageLength, metrics);
+		}
+
+		final TopPassagesCollector collector = new TopPassagesCollector(numPassages);
+		int from = 0;
+		int roundSize = Math.max(1, numPassages);
+		while (from < order.length) {
+			// Passages which score below the k-th best one are not collected, so the
+			// round stops at the first document which cannot reach it.
+			final double minCompetitiveScore = collector.getMinCompetitiveScore();
+			int to = from;
+			while (to < order.length && to - from < roundSize && maxScores[order[to]] >= minCompetitiveScore) {
+				to++;
+			}
+			if (to == from) {
+				metrics.count(PassageSearchMetrics.Count.SKIPPED_DOCS, order.length - from);
+				break;
+			}
+			final ScoreDoc[] round = new ScoreDoc[to - from];
+			for (int i = from; i < to; i++) {
+				round[i - from] = scoreDocs[order[i]];
+			}
+			final TopDocs roundTopDocs = new TopDocs(topDocs.totalHits, round, topDocs.getMaxScore());
+			collector.collectAll(in.search(query, roundTopDocs, numPassages, passageLength, metrics));
+			from = to;
+			roundSize *= 2;
+		}
+		return collector.getTopPassages();
+	}
+
+	/**
+	 * Returns the upper bounds of the passage scores of the given documents. The
+	 * documents are visited in doc ID order, so that each term's postings are only
+	 * advanced forward, one segment at a time.
+	 */
+	private double[] maxScores(QueryTermTable termTable, ScoreDoc[] scoreDocs) throws IOException {
+		final String[] terms = termTable.getTexts();
+		final double[] maxScores = new double[scoreDocs.length];
+		final Integer[] byDoc = new Integer[scoreDocs.length];
+		for (int i = 0; i < byDoc.length; i++) {
+			byDoc[i] = i;
+		}
+		Arrays.sort(byDoc, (i, j) -> Integer.compare(scoreDocs[i].doc, scoreDocs[j].doc));
+
+		final List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+		final PostingsEnum[] postings = new PostingsEnum[terms.length];
+		final int[] termFreqs = new int[terms.length];
+		int i = 0;
+		while (i < byDoc.length) {
+			final LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(scoreDocs[byDoc[i]].doc, leaves));
+			final int leafEnd = leaf.docBase + leaf.reader().maxDoc();
+			final Terms fieldTerms = leaf.reader().terms(field);
+			final TermsEnum termsEnum = fieldTerms == null ? null : fieldTerms.iterator();
+			for (int termOrd = 0; termOrd < terms.length; termOrd++) {
+				postings[termOrd] = termsEnum != null && termsEnum.seekExact(termTable.getTerm(termOrd).bytes())
+						? termsEnum.postings(null, PostingsEnum.FREQS)
+						: null;
+			}
+			for (; i < byDoc.length && scoreDocs[byDoc[i]].doc < leafEnd; i++) {
+				final ScoreDoc sd = scoreDocs[byDoc[i]];
+				final int leafDoc = sd.doc - leaf.docBase;
+				for (int termOrd = 0; termOrd < terms.length; termOrd++) {
+					final PostingsEnum termPostings = postings[termOrd];
+					termFreqs[termOrd] = 0;
+					if (termPostings == null) {
+						continue; // query term not found in segment.
+					}
+					if (termPostings.docID() < leafDoc) {
+						termPostings.advance(leafDoc);
+					}
+					if (termPostings.docID() == leafDoc) {
+						termFreqs[termOrd] = termPostings.freq();
+					}
+				}
+				maxScores[byDoc[i]] = passageScorer.maxScore(sd.score, terms, termFreqs);
+			}
+		}
+		return maxScores;
+	}
+
+}
@@ -0,0 +1,74 @@
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required byOCP applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * A {@link PassageSearchMetrics} which records stage timings and counts into
+ * {@link LongHistogram}s, for monitoring a searcher over many queries. Each
+ * search adds one sample per stage and count, so the histograms are
+ * distributions over searches.
+ */
+public class HistogramPassageSearchMetrics implements PassageSearchMetrics {
+
+	private final Map<Stage, LongHistogram> stages = new EnumMap<>(Stage.class);
+	private final Map<Count, LongHistogram> counts = new EnumMap<>(Count.class);
+
+	public HistogramPassageSearchMetrics() {
+		for (final Stage stage : Stage.values()) {
+			stages.put(stage, new LongHistogram());
+		}
+		for (final Count count : Count.values()) {
+			counts.put(count, new LongHistogram());
+		}
+	}
+
+	@Override
+	public void record(Stage stage, long nanos) {
+		stages.get(stage).record(nanos);
+	}
+
+	@Override
+	public void count(Count count, long value) {
+		counts.get(count).record(value);
+	}
+
+	/** Returns the histogram of the wall times, in nanoseconds, of a stage. */
+	public LongHistogram getHistogram(Stage stage) {
+		return stages.get(stage);
+	}
+
+	/** Returns the histogram of the recorded values of a count. */
+	public LongHistogram getHistogram(Count count) {
+		return counts.get(count);
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		for (final Stage stage : Stage.values()) {
+			sb.append(stage).append(" (ns): ").append(stages.get(stage)).append('\n');
+		}
+		for (final Count count : Count.values()) {
+			sb.append(count).append(": ").append(counts.get(count)).append('\n');
+		}
+		return sb.toString();
+	}
+
+}
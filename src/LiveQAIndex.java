@@ -0,0 +1,150 @@
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required byOCP applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Function;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.ControlledRealTimeReopenThread;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+
+import com.jsonReading.QAData;
+
+/**
+ * A live QA index which adds or updates {@link QAData} records by ID while
+ * searches continue. Searchers are managed by a {@link SearcherManager}, which
+ * is reopened in the background by a {@link ControlledRealTimeReopenThread},
+ * and every search runs against a freshly acquired {@link IndexSearcher}.
+ */
+public class LiveQAIndex implements Closeable {
+
+	/** A search to run against an acquired {@link IndexSearcher}. */
+	@FunctionalInterface
+	public interface SearchFunction<T> {
+		T search(IndexSearcher searcher) throws IOException;
+	}
+
+	private final IndexWriter writer;
+	private final Function<QAData, List<Document>> toDocuments;
+	private final SearcherManager searcherManager;
+	private final ControlledRealTimeReopenThread<IndexSearcher> reopenThread;
+
+	/**
+	 * Sole constructor.
+	 *
+	 * @param dir
+	 *            the {@link Directory} of the index.
+	 * @param config
+	 *            the {@link IndexWriterConfig} of the index, usually with
+	 *            {@link org.apache.lucene.index.IndexWriterConfig.OpenMode#CREATE_OR_APPEND}.
+	 * @param toDocuments
+	 *            converts a record to its document, or block of documents.
+	 * @param targetMaxStaleSec
+	 *            the maximum time, in seconds, before an update becomes visible
+	 *            to searches when nobody waits for it.
+	 * @param targetMinStaleSec
+	 *            the minimum time, in seconds, between reopens when somebody
+	 *            waits for an update.
+	 */
+	public LiveQAIndex(Directory dir, IndexWriterConfig config, Function<QAData, List<Document>> toDocuments,
+			double targetMaxStaleSec, double targetMinStaleSec) throws IOException {
+		this.writer = new IndexWriter(dir, config);
+		this.toDocuments = toDocuments;
+		this.searcherManager = new SearcherManager(writer, null);
+		this.reopenThread = new ControlledRealTimeReopenThread<>(writer, searcherManager, targetMaxStaleSec,
+				targetMinStaleSec);
+		reopenThread.setName("qa-index-reopen");
+		reopenThread.setDaemon(true);
+		reopenThread.start();
+	}
+
+	/**
+	 * Adds a record, or replaces the record with the same ID. Returns the
+	 * generation to pass to {@link #waitForGeneration(long)} in order to wait for
+	 * the update to become visible to searches.
+	 */
+	public long update(QAData data) throws IOException {
+		final Term id = new Term(QADataIndexer.ID_FIELD, data.getId());
+		final List<Document> docs = toDocuments.apply(data);
+		if (docs.size() == 1) {
+			return writer.updateDocument(id, docs.get(0));
+		}
+		// A block of documents, which all share the record's ID.
+		return writer.updateDocuments(id, docs);
+	}
+
+	/** Deletes the record with the given ID. */
+	public long delete(String id) throws IOException {
+		return writer.deleteDocuments(new Term(QADataIndexer.ID_FIELD, id));
+	}
+
+	/** Waits until the given generation is visible to searches. */
+	public void waitForGeneration(long generation) throws InterruptedException {
+		reopenThread.waitForGeneration(generation);
+	}
+
+	/** Commits all the changes so far to the directory. */
+	public void commit() throws IOException {
+		writer.commit();
+	}
+
+	/** Runs a search against the most recently opened {@link IndexSearcher}. */
+	public <T> T search(SearchFunction<T> function) throws IOException {
+		final IndexSearcher searcher = searcherManager.acquire();
+		try {
+			return function.search(searcher);
+		} finally {
+			searcherManager.release(searcher);
+		}
+	}
+
+	/**
+	 * Searches the top documents of a query and extracts passages from them, with
+	 * a {@link PassageSearcher} created for the acquired {@link IndexSearcher}.
+	 * Documents are searched with {@link PassageBlocks#recordsOnly(Query)}, so
+	 * that the passage documents of blocks are not returned as top documents.
+	 */
+	public List<Passage> searchPassages(Query query, int numDocs,
+			Function<IndexSearcher, PassageSearcher> passageSearchers, int numPassages, int passageLength)
+			throws IOException {
+		return search(searcher -> {
+			final TopDocs topDocs = searcher.search(PassageBlocks.recordsOnly(query), numDocs);
+			return passageSearchers.apply(searcher).search(query, topDocs, numPassages, passageLength);
+		});
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			reopenThread.close();
+			searcherManager.close();
+		} finally {
+			writer.close();
+		}
+	}
+
+}
@@ -0,0 +1,124 @@
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required byOCP applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of non-negative long values, e.g. latencies in
+ * nanoseconds. Values are counted in log-linear buckets: each power of two is
+ * split into 8 sub-buckets, so reported percentiles are within 12.5% of the
+ * recorded values. Recording is a few atomic increments, and never blocks.
+ */
+public class LongHistogram {
+
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	/** Records a value. Negative values are recorded as 0. */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts.incrementAndGet(bucket(value));
+		count.increment();
+		sum.add(value);
+		long current;
+		while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+		}
+	}
+
+	/** Returns the bucket of a value: its exponent, and its top mantissa bits. */
+	private static int bucket(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		final int exponent = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		final int mantissa = (int) (value >>> exponent) & (SUB_BUCKETS - 1);
+		return (exponent + 1) * SUB_BUCKETS + mantissa;
+	}
+
+	/** Returns the largest value which falls in the given bucket. */
+	private static long bucketMax(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		final int exponent = bucket / SUB_BUCKETS - 1;
+		final long mantissa = SUB_BUCKETS + bucket % SUB_BUCKETS;
+		return ((mantissa + 1) << exponent) - 1;
+	}
+
+	/** Returns the number of recorded values. */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/** Returns the sum of the recorded values. */
+	public long getSum() {
+		return sum.sum();
+	}
+
+	/** Returns the largest recorded value. */
+	public long getMax() {
+		return max.get();
+	}
+
+	/** Returns the mean of the recorded values. */
+	public double getMean() {
+		final long n = getCount();
+		return n == 0 ? 0 : (double) getSum() / n;
+	}
+
+	/**
+	 * Returns (an upper bound of) the value at the given percentile (0-100) of the
+	 * recorded values, or 0 if none were recorded.
+	 */
+	public long getPercentile(double percentile) {
+		long total = 0;
+		final long[] snapshot = new long[counts.length()];
+		for (int i = 0; i < snapshot.length; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+		long seen = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return Math.min(bucketMax(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	@Override
+	public String toString() {
+		return Utils.format("count=%d, mean=%.1f, p50=%d, p95=%d, p99=%d, max=%d", getCount(), getMean(),
+				getPercentile(50), getPercentile(95), getPercentile(99), getMax());
+	}
+
+}
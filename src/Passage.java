@@ -17,20 +17,36 @@
  */
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.lucene.util.ArrayUtil;
+
 public class Passage {
 	private String docID;
+	private int luceneDocID = -1;
 	private double docScore;
 	private double score;
 	private int startOffset;
 	private int endOffset;
 	private String text;
+	// the table of terms which hits refer to by ordinal, usually shared by all the
+	// passages of a query and copied on write if a passage adds a new term to it.
+	private String[] terms = NO_TERMS;
+	// (term ordinal, start offset, end offset) triplets of the query terms' hits.
+	private int[] hits = NO_HITS;
+	private int numHits = 0;
 	// hash map that the key is the term, and value is an array list with the
-	// offsets' of the key
-	private final Map<String, List<Interval>> queryTerms = new HashMap<>();
+	// offsets' of the key, created lazily from the hits. Cached passages are
+	// shared between threads, so the map is filled before being published, and
+	// is unmodifiable.
+	private volatile Map<String, List<Interval>> queryTerms = null;
+
+	private static final String[] NO_TERMS = new String[0];
+	private static final int[] NO_HITS = new int[0];
 
 	public String getDocID() {
 		return docID;
@@ -41,6 +57,16 @@ public class Passage {
 		return this;
 	}
 
+	/** Returns the Lucene doc ID of the passage's document. */
+	public int getLuceneDocID() {
+		return luceneDocID;
+	}
+
+	public Passage setLuceneDocID(int luceneDocID) {
+		this.luceneDocID = luceneDocID;
+		return this;
+	}
+
 	public double getDocScore() {
 		return docScore;
 	}
@@ -77,6 +103,10 @@ public class Passage {
 		return this;
 	}
 
+	/**
+	 * Returns the passage's text, or {@code null} if it was not materialized
+	 * (searchers only materialize the text of the passages they return).
+	 */
 	public String getText() {
 		return text;
 	}
@@ -86,10 +116,87 @@ public class Passage {
 		return this;
 	}
 
+	/**
+	 * Returns the hits of the query terms, keyed by term. The map is created
+	 * lazily from the compact hits representation, so it should only be called
+	 * for passages which are returned to the user. The map is unmodifiable.
+	 */
 	public Map<String, List<Interval>> getQueryTerms() {
+		Map<String, List<Interval>> queryTerms = this.queryTerms;
+		if (queryTerms == null) {
+			final Map<String, List<Interval>> termsOffsets = new HashMap<>();
+			for (int i = 0; i < numHits; i++) {
+				final String term = terms[hits[3 * i]];
+				List<Interval> termOffsets = termsOffsets.get(term);
+				if (termOffsets == null) {
+					termOffsets = new ArrayList<>();
+					termsOffsets.put(term, termOffsets);
+				}
+				termOffsets.add(new Interval(hits[3 * i + 1], hits[3 * i + 2]));
+			}
+			for (final Map.Entry<String, List<Interval>> entry : termsOffsets.entrySet()) {
+				entry.setValue(Collections.unmodifiableList(entry.getValue()));
+			}
+			// Concurrent callers may each build the map; they build equal ones.
+			queryTerms = Collections.unmodifiableMap(termsOffsets);
+			this.queryTerms = queryTerms;
+		}
 		return queryTerms;
 	}
 
+	/**
+	 * Sets the table of terms which {@link #addHit(int, int, int)} refers to by
+	 * ordinal. The table may be shared by many passages and is never modified.
+	 */
+	public Passage setTermTable(String[] terms) {
+		this.terms = terms;
+		return this;
+	}
+
+	public String[] getTermTable() {
+		return terms;
+	}
+
+	/** Returns the total number of query terms' hits in this passage. */
+	public int getNumHits() {
+		return numHits;
+	}
+
+	/** Returns the ordinal, in the term table, of the term of the i-th hit. */
+	public int getHitTerm(int i) {
+		return hits[3 * i];
+	}
+
+	public int getHitStartOffset(int i) {
+		return hits[3 * i + 1];
+	}
+
+	public int getHitEndOffset(int i) {
+		return hits[3 * i + 2];
+	}
+
+	/**
+	 * 
+	 * @param termOrd:
+	 *            the ordinal of the term in the term table.
+	 * @param start:
+	 *            the start offset of the term.
+	 * @param end:
+	 *            the end offset of the term.
+	 * @return the current object after modification.
+	 */
+	public Passage addHit(int termOrd, int start, int end) {
+		if (3 * numHits + 3 > hits.length) {
+			hits = ArrayUtil.grow(hits, 3 * numHits + 3);
+		}
+		hits[3 * numHits] = termOrd;
+		hits[3 * numHits + 1] = start;
+		hits[3 * numHits + 2] = end;
+		numHits++;
+		queryTerms = null; // recreated on next access.
+		return this;
+	}
+
 	/**
 	 * 
 	 * @param term:
@@ -99,15 +206,15 @@ public class Passage {
 	 * @return the current object after modification.
 	 */
 	public Passage addTerm(String term, Interval offsets) {
-		// get all offsets where term exists, if it does not exist so create new list
-		// and add the offset to it.
-		List<Interval> termOffsets = queryTerms.get(term);
-		if (termOffsets == null) {
-			termOffsets = new ArrayList<>();
-			queryTerms.put(term, termOffsets);
+		// find the ordinal of the term, if it does not exist so add it to the term
+		// table (copying it first, since it may be shared).
+		int termOrd = Arrays.asList(terms).indexOf(term);
+		if (termOrd == -1) {
+			termOrd = terms.length;
+			terms = Arrays.copyOf(terms, termOrd + 1);
+			terms[termOrd] = term;
 		}
-		termOffsets.add(offsets);
-		return this;
+		return addHit(termOrd, offsets.start, offsets.end);
 	}
 
 	/**
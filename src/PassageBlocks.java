@@ -0,0 +1,156 @@
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required byOCP applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+
+import com.jsonReading.QAData;
+
+/**
+ * Converts {@link QAData} records to blocks of documents, where each passage of
+ * the body is indexed as a child document followed by the record's parent
+ * document, for use with {@link BlockJoinPassageSearcher}.
+ */
+public class PassageBlocks {
+
+	public static final String TYPE_FIELD = "type";
+	public static final String PARENT_TYPE = "qa";
+	public static final String PASSAGE_TYPE = "passage";
+	public static final String START_OFFSET_FIELD = "start_offset";
+	public static final String END_OFFSET_FIELD = "end_offset";
+
+	/** Matches the parent documents. */
+	public static final Query PARENTS = new TermQuery(new Term(TYPE_FIELD, PARENT_TYPE));
+
+	/** Matches the passage documents. */
+	public static final Query PASSAGES = new TermQuery(new Term(TYPE_FIELD, PASSAGE_TYPE));
+
+	/**
+	 * Restricts a query to the records' documents. Passage documents carry their
+	 * record's ID and a part of its body, so document searches over an index of
+	 * blocks must exclude them. Indices without blocks have no passage
+	 * documents, so the restricted query matches the same documents there.
+	 */
+	public static Query recordsOnly(Query query) {
+		return new BooleanQuery.Builder().add(query, Occur.MUST).add(PASSAGES, Occur.MUST_NOT).build();
+	}
+
+	/** Splits a document's text into passages. */
+	@FunctionalInterface
+	public interface Splitter {
+		/**
+		 * Returns the (start, end) offsets of the passages of the given text, as
+		 * consecutive pairs.
+		 */
+		int[] split(String text);
+	}
+
+	private final Splitter splitter;
+	private final FieldType bodyType;
+
+	/**
+	 * Constructs blocks whose body field, of both the parent and the children, is
+	 * indexed with {@link QADataIndexer#POSTINGS_OFFSETS_TYPE}.
+	 *
+	 * @param splitter
+	 *            the {@link Splitter} to split the body into passages with.
+	 */
+	public PassageBlocks(Splitter splitter) {
+		this(splitter, QADataIndexer.POSTINGS_OFFSETS_TYPE);
+	}
+
+	/**
+	 * Constructs blocks whose body field is indexed with the given
+	 * {@link FieldType}. The parent and the children share the field, so it must
+	 * be the same for both.
+	 *
+	 * @param splitter
+	 *            the {@link Splitter} to split the body into passages with.
+	 * @param bodyType
+	 *            the {@link FieldType} of the body field.
+	 */
+	public PassageBlocks(Splitter splitter, FieldType bodyType) {
+		this.splitter = splitter;
+		this.bodyType = bodyType;
+	}
+
+	/**
+	 * Returns a {@link Splitter} which splits text into fixed-length windows, like
+	 * {@link TermVectorsPassageSearcher} does at query time.
+	 */
+	public static Splitter fixed(int passageLength, double overlapRatio) {
+		final PassageLayout layout = new PassageLayout(passageLength, overlapRatio);
+		return text -> {
+			final List<Passage> passages = layout.passages(null, -1, 0, text.length(), null);
+			final int[] offsets = new int[2 * passages.size()];
+			for (int i = 0; i < passages.size(); i++) {
+				offsets[2 * i] = passages.get(i).getStartOffset();
+				offsets[2 * i + 1] = passages.get(i).getEndOffset();
+			}
+			return offsets;
+		};
+	}
+
+	/**
+	 * Returns a {@link Splitter} which groups whole sentences into passages of at
+	 * most maxLength characters. A sentence longer than maxLength makes a passage
+	 * on its own.
+	 */
+	public static Splitter sentences(int maxLength) {
+		return text -> SentenceBoundaries.group(SentenceBoundaries.of(text), maxLength);
+	}
+
+	/**
+	 * Converts a record to a block of documents: one child document per passage,
+	 * followed by the parent document (as returned by
+	 * {@link QADataIndexer#toDocument(QAData, FieldType)}). The children share the
+	 * parent's ID, so that the whole block can be updated or deleted by ID.
+	 */
+	public List<Document> toBlock(QAData data) {
+		final String body = QADataIndexer.bodyOf(data);
+		final int[] offsets = splitter.split(body);
+		final List<Document> block = new ArrayList<>(offsets.length / 2 + 1);
+		for (int i = 0; i < offsets.length; i += 2) {
+			final Document child = new Document();
+			child.add(new StringField(TYPE_FIELD, PASSAGE_TYPE, Store.NO));
+			child.add(new StringField(QADataIndexer.ID_FIELD, data.getId(), Store.YES));
+			child.add(new Field(QADataIndexer.BODY_FIELD, body.substring(offsets[i], offsets[i + 1]),
+					bodyType));
+			child.add(new StoredField(START_OFFSET_FIELD, offsets[i]));
+			child.add(new StoredField(END_OFFSET_FIELD, offsets[i + 1]));
+			block.add(child);
+		}
+		final Document parent = QADataIndexer.toDocument(data, bodyType);
+		parent.add(new StringField(TYPE_FIELD, PARENT_TYPE, Store.NO));
+		block.add(parent);
+		return block;
+	}
+
+}
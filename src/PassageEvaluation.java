@@ -0,0 +1,311 @@
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required byOCP applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+
+import com.jsonReading.QAData;
+import com.jsonReading.QADataIterator;
+import com.jsonReading.ReadYahooDataBase;
+
+/**
+ * Evaluates a {@link PassageSearcher} by issuing the questions of QA records as
+ * queries, and reports both retrieval quality and latency. A returned passage
+ * is relevant if it belongs to the question's own record and overlaps the
+ * record's gold answer within the body (see {@link QADataIndexer#bodyOf}).
+ */
+public class PassageEvaluation {
+
+	private final IndexSearcher searcher;
+	private final Analyzer analyzer;
+	private final PassageSearcher passageSearcher;
+	private final int numDocs;
+	private final int numPassages;
+	private final int passageLength;
+	private final HistogramPassageSearchMetrics metrics = new HistogramPassageSearchMetrics();
+
+	/**
+	 * Sole constructor.
+	 *
+	 * @param searcher
+	 *            the {@link IndexSearcher} to search the top documents with.
+	 * @param analyzer
+	 *            the {@link Analyzer} to parse questions with.
+	 * @param passageSearcher
+	 *            the {@link PassageSearcher} to evaluate, must be thread-safe if
+	 *            questions are issued concurrently.
+	 * @param numDocs
+	 *            the number of top documents to extract passages from.
+	 * @param numPassages
+	 *            the number of passages to retrieve for each question (the k of
+	 *            success@k).
+	 * @param passageLength
+	 *            the length of the passages.
+	 */
+	public PassageEvaluation(IndexSearcher searcher, Analyzer analyzer, PassageSearcher passageSearcher, int numDocs,
+			int numPassages, int passageLength) {
+		this.searcher = searcher;
+		this.analyzer = analyzer;
+		this.passageSearcher = passageSearcher;
+		this.numDocs = numDocs;
+		this.numPassages = numPassages;
+		this.passageLength = passageLength;
+	}
+
+	/** Issues the questions with the given number of concurrent threads. */
+	public Report run(List<QAData> questions, int concurrency) throws IOException, InterruptedException {
+		final ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+		try {
+			final long startNanos = System.nanoTime();
+			final List<Future<Result>> futures = new ArrayList<>(questions.size());
+			for (final QAData data : questions) {
+				futures.add(executor.submit(() -> evaluate(data)));
+			}
+			final List<Result> results = new ArrayList<>(futures.size());
+			for (final Future<Result> future : futures) {
+				results.add(future.get());
+			}
+			return new Report(results, numPassages, System.nanoTime() - startNanos);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/** Returns the per-stage metrics of the passage searches issued so far. */
+	public HistogramPassageSearchMetrics getMetrics() {
+		return metrics;
+	}
+
+	/** Issues a single question, and returns its latency and reciprocal rank. */
+	private Result evaluate(QAData data) throws IOException {
+		final Query query;
+		try {
+			// QueryParser is not thread-safe, so a new one is created per question.
+			query = new QueryParser(QADataIndexer.BODY_FIELD, analyzer).parse(QueryParser.escape(data.getQuestion()));
+		} catch (ParseException e) {
+			throw new IllegalArgumentException("Failed to parse question of [" + data.getId() + "]", e);
+		}
+		final long startNanos = System.nanoTime();
+		final TopDocs topDocs = searcher.search(query, numDocs);
+		final List<Passage> passages = passageSearcher.search(query, topDocs, numPassages, passageLength, metrics);
+		final long latencyNanos = System.nanoTime() - startNanos;
+
+		final String answer = data.getAnswer();
+		final int answerStart = answer == null || answer.isEmpty() ? -1 : QADataIndexer.bodyOf(data).indexOf(answer);
+		if (answerStart != -1) {
+			final int answerEnd = answerStart + answer.length();
+			for (int rank = 0; rank < passages.size(); rank++) {
+				final Passage passage = passages.get(rank);
+				if (data.getId().equals(passage.getDocID()) && passage.getStartOffset() < answerEnd
+						&& answerStart < passage.getEndOffset()) {
+					return new Result(latencyNanos, 1.0 / (rank + 1));
+				}
+			}
+		}
+		return new Result(latencyNanos, 0);
+	}
+
+	private static class Result {
+		final long latencyNanos;
+		final double reciprocalRank;
+
+		Result(long latencyNanos, double reciprocalRank) {
+			this.latencyNanos = latencyNanos;
+			this.reciprocalRank = reciprocalRank;
+		}
+	}
+
+	/** Quality and latency statistics of an evaluation run. */
+	public static class Report {
+		public final int numQuestions;
+		/** The number of passages retrieved for each question. */
+		public final int k;
+		/** The mean reciprocal rank of the first relevant passage. */
+		public final double mrr;
+		/**
+		 * The fraction of questions with a relevant passage among the top k
+		 * (success@k). This is not recall: a question's gold answer may overlap
+		 * several passages, and finding one of them is a success.
+		 */
+		public final double successRate;
+		public final double qps;
+		private final long[] latencies;
+
+		Report(List<Result> results, int k, long elapsedNanos) {
+			this.numQuestions = results.size();
+			this.k = k;
+			this.latencies = new long[numQuestions];
+			double sumReciprocalRanks = 0;
+			int numFound = 0;
+			for (int i = 0; i < numQuestions; i++) {
+				final Result result = results.get(i);
+				latencies[i] = result.latencyNanos;
+				sumReciprocalRanks += result.reciprocalRank;
+				if (result.reciprocalRank > 0) {
+					numFound++;
+				}
+			}
+			Arrays.sort(latencies);
+			this.mrr = numQuestions == 0 ? 0 : sumReciprocalRanks / numQuestions;
+			this.successRate = numQuestions == 0 ? 0 : (double) numFound / numQuestions;
+			this.qps = elapsedNanos == 0 ? 0 : numQuestions * 1e9 / elapsedNanos;
+		}
+
+		/** Returns the given percentile (0-100) of the latencies, in milliseconds. */
+		public double latencyMillis(double percentile) {
+			if (latencies.length == 0) {
+				return 0;
+			}
+			final int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+			return latencies[Math.max(0, Math.min(latencies.length - 1, index))] / 1e6;
+		}
+
+		@Override
+		public String toString() {
+			return Utils.format("questions=%d, MRR=%.4f, success@%d=%.4f, "
+					+ "latency(ms): p50=%.2f p95=%.2f p99=%.2f max=%.2f, QPS=%.1f",
+					numQuestions, mrr, k, successRate, latencyMillis(50), latencyMillis(95), latencyMillis(99),
+					latencyMillis(100), qps);
+		}
+	}
+
+	/**
+	 * Reads a uniform sample of at most sampleSize records which have a question
+	 * from a JSON file, with reservoir sampling so that the file is streamed once.
+	 */
+	public static List<QAData> sample(String jsonPath, int sampleSize, long seed) throws IOException {
+		final Random random = new Random(seed);
+		final List<QAData> sample = new ArrayList<>(sampleSize);
+		try (QADataIterator records = ReadYahooDataBase.iterator(jsonPath)) {
+			// The number of records with a question seen so far, which are the only
+			// candidates of the sample.
+			long numEligible = 0;
+			while (records.hasNext()) {
+				final QAData data = records.next();
+				if (data.getQuestion() == null) {
+					continue;
+				}
+				final long i = numEligible++;
+				if (sample.size() < sampleSize) {
+					sample.add(data);
+				} else {
+					final long j = (long) (random.nextDouble() * (i + 1));
+					if (j < sampleSize) {
+						sample.set((int) j, data);
+					}
+				}
+			}
+		}
+		return sample;
+	}
+
+	/** Returns a factory of the {@link PassageSearcher} with the given name. */
+	private static Function<IndexSearcher, PassageSearcher> passageSearchers(String name, PassageScorer scorer) {
+		switch (name) {
+		case "tv":
+			return s -> new TermVectorsPassageSearcher(s, QADataIndexer.BODY_FIELD, 0.1, scorer);
+		case "dense":
+			return s -> new TermVectorsPassageSearcher(s, QADataIndexer.BODY_FIELD, 0, scorer, null, null,
+					TermVectorsPassageSearcher.Mode.DENSE);
+		case "sentences":
+			return s -> new TermVectorsPassageSearcher(s, QADataIndexer.BODY_FIELD, 0, scorer, null, null,
+					TermVectorsPassageSearcher.Mode.SENTENCES);
+		case "postings":
+			return s -> new PostingsPassageSearcher(s, QADataIndexer.BODY_FIELD, 0.1, scorer);
+		case "snippets":
+			return s -> new SnippetsPassageSearcher(s, QADataIndexer.BODY_FIELD, 2, scorer, null,
+					SnippetsPassageSearcher.Mode.OFFSETS);
+		default:
+			throw new IllegalArgumentException("Unknown passage searcher: " + name);
+		}
+	}
+
+	/**
+	 * Usage: PassageEvaluation &lt;index dir&gt; &lt;json file&gt; [sample size]
+	 * [concurrency] [tv|dense|sentences|postings|snippets] [passage length] [k] [tf|proximity|bm25]
+	 * [early]
+	 */
+	public static void main(String[] args) throws Exception {
+		final String indexPath = args[0];
+		final String jsonPath = args[1];
+		final int sampleSize = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+		final int concurrency = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+		final String searcherName = args.length > 4 ? args[4] : "tv";
+		final int passageLength = args.length > 5 ? Integer.parseInt(args[5]) : 250;
+		final int numPassages = args.length > 6 ? Integer.parseInt(args[6]) : 5;
+		final String scorerName = args.length > 7 ? args[7] : "tf";
+		final boolean earlyTermination = args.length > 8 && args[8].equals("early");
+
+		final List<QAData> questions = sample(jsonPath, sampleSize, 0);
+		try (Directory dir = FSDirectory.open(Paths.get(indexPath));
+				DirectoryReader reader = DirectoryReader.open(dir);
+				Analyzer analyzer = new EnglishAnalyzer()) {
+			final IndexSearcher searcher = new IndexSearcher(reader);
+			final PassageScorer scorer;
+			switch (scorerName) {
+			case "bm25":
+				scorer = new BM25PassageScorer(reader, QADataIndexer.BODY_FIELD, passageLength);
+				break;
+			case "proximity":
+				scorer = new ProximityPassageScorer();
+				break;
+			default:
+				scorer = PassageScorer.DOC_SCORE_AND_QUERY_TF;
+			}
+			PassageSearcher passageSearcher = passageSearchers(searcherName, scorer).apply(searcher);
+			if (earlyTermination) {
+				passageSearcher = new EarlyTerminatingPassageSearcher(searcher, QADataIndexer.BODY_FIELD,
+						passageSearcher, scorer);
+			}
+			// Warm up, then measure with a fresh evaluation, so that its metrics only
+			// cover the measured run.
+			new PassageEvaluation(searcher, analyzer, passageSearcher, 100, numPassages, passageLength)
+					.run(questions.subList(0, Math.min(100, questions.size())), concurrency);
+			final PassageEvaluation evaluation = new PassageEvaluation(searcher, analyzer, passageSearcher, 100,
+					numPassages, passageLength);
+			System.out.println(evaluation.run(questions, concurrency));
+			System.out.print(evaluation.getMetrics());
+		}
+	}
+
+}
@@ -0,0 +1,88 @@
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required byOCP applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lays out fixed-length passages at a fixed stride over a document's text, so
+ * that passage i covers [i * stride, i * stride + passageLength).
+ */
+public class PassageLayout {
+
+	private final int passageLength;
+	private final int stride;
+
+	/**
+	 * Sole constructor.
+	 *
+	 * @param passageLength
+	 *            the length, in characters, of the passages.
+	 * @param overlapRatio
+	 *            the percentage of overlapping characters between passages.
+	 */
+	public PassageLayout(int passageLength, double overlapRatio) {
+		this.passageLength = passageLength;
+		this.stride = Math.max(1, (int) (passageLength * (1.0 - overlapRatio)));
+	}
+
+	/**
+	 * Returns the distance between the start offsets of two consecutive passages.
+	 */
+	public int getStride() {
+		return stride;
+	}
+
+	/**
+	 * Returns the passages of a document, with their offsets set. The text of the
+	 * passages is not set.
+	 */
+	public List<Passage> passages(String docID, int luceneDocID, double docScore, int textLength,
+			String[] termTable) {
+		final List<Passage> docPassages = new ArrayList<>();
+		for (int start = 0; start < textLength; start += stride) {
+			final int end = start + Math.min(passageLength, textLength - start);
+			docPassages.add(new Passage().setDocID(docID).setLuceneDocID(luceneDocID).setDocScore(docScore)
+					.setStartOffset(start).setEndOffset(end).setTermTable(termTable));
+		}
+		return docPassages;
+	}
+
+	/**
+	 * Adds a term occurrence to all the passages which fully contain it. The range
+	 * of passages is computed directly from the term's offsets, rather than by
+	 * scanning all the doc's passages.
+	 */
+	public void addHit(List<Passage> docPassages, int termOrd, int startOffset, int endOffset) {
+		final int last = Math.min(startOffset / stride, docPassages.size() - 1);
+		for (int p = firstPassage(endOffset); p <= last; p++) {
+			docPassages.get(p).addHit(termOrd, startOffset, endOffset);
+		}
+	}
+
+	/**
+	 * Returns the index of the first passage whose end offset is not before the
+	 * given end offset, i.e. the smallest i such that
+	 * {@code i * stride + passageLength >= endOffset}.
+	 */
+	private int firstPassage(int endOffset) {
+		final int excess = endOffset - passageLength;
+		return excess <= 0 ? 0 : (excess + stride - 1) / stride;
+	}
+
+}
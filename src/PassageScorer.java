@@ -54,17 +54,61 @@ public interface PassageScorer {
 	 * A {@link PassageScorer} which sets a passage's score to the score of the
 	 * document from which it was originated.
 	 */
-	static PassageScorer BY_DOC_SCORE = (passages) -> passages.forEach(p -> p.setScore(p.getDocScore()));
+	static PassageScorer BY_DOC_SCORE = new PassageScorer() {
+		@Override
+		public void score(List<Passage> passages) {
+			passages.forEach(p -> p.setScore(p.getDocScore()));
+		}
+
+		@Override
+		public double maxScore(double docScore, String[] terms, int[] termFreqs) {
+			return docScore;
+		}
+	};
 
 	/**
 	 * A {@link PassageScorer} which scores a passage by the total number of query
 	 * terms it contains multiplied by the score of the document from which it was
 	 * originated.
 	 */
-	static PassageScorer DOC_SCORE_AND_QUERY_TF = (passages) -> passages
-			.forEach(p -> p.setScore(p.getDocScore() * p.getQueryTerms().values().stream().mapToInt(List::size).sum()));
+	static PassageScorer DOC_SCORE_AND_QUERY_TF = new PassageScorer() {
+		@Override
+		public void score(List<Passage> passages) {
+			passages.forEach(p -> p.setScore(p.getDocScore() * p.getNumHits()));
+		}
 
-	/** Scores a list of passages. */
+		@Override
+		public double maxScore(double docScore, String[] terms, int[] termFreqs) {
+			long totalFreq = 0;
+			for (final int freq : termFreqs) {
+				totalFreq += freq;
+			}
+			return docScore * totalFreq;
+		}
+	};
+
+	/**
+	 * Scores a list of passages. Searchers call this once per document, with the
+	 * candidate passages of that document.
+	 */
 	void score(List<Passage> passages) throws IOException;
 
+	/**
+	 * Returns an upper bound of the scores of the passages of a document, or
+	 * {@link Double#POSITIVE_INFINITY} if this scorer cannot bound them. Searchers
+	 * use it to skip documents whose passages cannot make it to the top (see
+	 * {@link EarlyTerminatingPassageSearcher}).
+	 *
+	 * @param docScore
+	 *            the score of the document.
+	 * @param terms
+	 *            the query terms, as in {@link Passage#getTermTable()}.
+	 * @param termFreqs
+	 *            the number of occurrences of each query term in the document,
+	 *            which bounds the hits of any of its passages.
+	 */
+	default double maxScore(double docScore, String[] terms, int[] termFreqs) throws IOException {
+		return Double.POSITIVE_INFINITY;
+	}
+
 }
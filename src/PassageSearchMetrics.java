@@ -0,0 +1,108 @@
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required byOCP applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Receives the per-stage timings and counts of passage searches. Searchers
+ * record the total time of each stage and the total of each count once per
+ * search, summed over the documents, and possibly from several threads at
+ * once, so implementations must be thread-safe.
+ *
+ * @see HistogramPassageSearchMetrics
+ * @see PassageSearchProfile
+ */
+public interface PassageSearchMetrics {
+
+	/** The stages of a passage search. */
+	enum Stage {
+		/** Extracting the query terms, which creates the query's weight. */
+		QUERY_TERMS,
+		/** Bounding the passage scores of the top documents, to skip some of them. */
+		BOUNDS,
+		/** Looking up a document's ID and text length. */
+		DOC_LOOKUP,
+		/** Laying out a document's candidate passages. */
+		LAYOUT,
+		/**
+		 * Reading the offsets of the query terms in a document, from its term vector,
+		 * the postings or the highlighter's term stack, and assigning them to
+		 * candidate passages.
+		 */
+		TERM_OFFSETS,
+		/** Scoring a document's candidate passages. */
+		SCORE,
+		/** Keeping the top passages, and sorting them. */
+		COLLECT,
+		/** Loading the text of the returned passages. */
+		LOAD_TEXT
+	}
+
+	/** The quantities counted during a passage search. */
+	enum Count {
+		/** Documents whose passages were extracted. */
+		DOCS,
+		/** Top documents skipped since none of their passages could make it to the top. */
+		SKIPPED_DOCS,
+		/** Candidate passages which were scored. */
+		CANDIDATES,
+		/** Query term occurrences which were read. */
+		HITS,
+		/** Bytes of text loaded, as UTF-16. */
+		TEXT_BYTES
+	}
+
+	/** A {@link PassageSearchMetrics} which discards everything. */
+	static PassageSearchMetrics NONE = new PassageSearchMetrics() {
+		@Override
+		public void record(Stage stage, long nanos) {
+		}
+
+		@Override
+		public void count(Count count, long value) {
+		}
+	};
+
+	/** Records the wall time of a stage. */
+	void record(Stage stage, long nanos);
+
+	/** Records a count. */
+	void count(Count count, long value);
+
+	/** Returns a {@link PassageSearchMetrics} which records to both given ones. */
+	static PassageSearchMetrics tee(PassageSearchMetrics first, PassageSearchMetrics second) {
+		if (first == NONE) {
+			return second;
+		}
+		if (second == NONE) {
+			return first;
+		}
+		return new PassageSearchMetrics() {
+			@Override
+			public void record(Stage stage, long nanos) {
+				first.record(stage, nanos);
+				second.record(stage, nanos);
+			}
+
+			@Override
+			public void count(Count count, long value) {
+				first.count(count, value);
+				second.count(count, value);
+			}
+		};
+	}
+
+}
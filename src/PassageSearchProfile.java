@@ -0,0 +1,92 @@
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required byOCP applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link PassageSearchMetrics} which sums the stage timings and counts of a
+ * single query, as a debug breakdown of where its time went. Stages which run
+ * per document on several threads are summed across threads, so their total
+ * may exceed the query's wall time.
+ * <p>
+ * Searchers also sum their per-document timings and counts in a profile, and
+ * then {@link #recordTo(PassageSearchMetrics) record} them once per search.
+ */
+public class PassageSearchProfile implements PassageSearchMetrics {
+
+	private final AtomicLongArray stageNanos = new AtomicLongArray(Stage.values().length);
+	private final AtomicLongArray stageCalls = new AtomicLongArray(Stage.values().length);
+	private final AtomicLongArray counts = new AtomicLongArray(Count.values().length);
+
+	@Override
+	public void record(Stage stage, long nanos) {
+		stageNanos.addAndGet(stage.ordinal(), nanos);
+		stageCalls.incrementAndGet(stage.ordinal());
+	}
+
+	@Override
+	public void count(Count count, long value) {
+		counts.addAndGet(count.ordinal(), value);
+	}
+
+	/**
+	 * Records the totals of this profile into the given metrics: the total time
+	 * of each stage which was recorded, and the total of every count.
+	 */
+	public void recordTo(PassageSearchMetrics metrics) {
+		if (metrics == NONE) {
+			return;
+		}
+		for (final Stage stage : Stage.values()) {
+			if (getCalls(stage) > 0) {
+				metrics.record(stage, getNanos(stage));
+			}
+		}
+		for (final Count count : Count.values()) {
+			metrics.count(count, getCount(count));
+		}
+	}
+
+	/** Returns the total wall time, in nanoseconds, of a stage. */
+	public long getNanos(Stage stage) {
+		return stageNanos.get(stage.ordinal());
+	}
+
+	/** Returns the number of times a stage was recorded. */
+	public long getCalls(Stage stage) {
+		return stageCalls.get(stage.ordinal());
+	}
+
+	/** Returns the total of a count. */
+	public long getCount(Count count) {
+		return counts.get(count.ordinal());
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		for (final Stage stage : Stage.values()) {
+			sb.append(Utils.format("%s=%.3fms(%d) ", stage, getNanos(stage) / 1e6, getCalls(stage)));
+		}
+		for (final Count count : Count.values()) {
+			sb.append(Utils.format("%s=%d ", count, getCount(count)));
+		}
+		return sb.toString().trim();
+	}
+
+}
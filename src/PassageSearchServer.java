@@ -0,0 +1,539 @@
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required byOCP applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An embeddable HTTP service which returns the top passages of a query as JSON:
+ * {@code GET /search?q=<query>[&docs=100][&passages=5][&length=250]}, and
+ * its counters and per-stage latency histograms at {@code GET /stats}. A
+ * search with {@code debug=true} also returns its own per-stage breakdown.
+ * <p>
+ * Requests are admitted on the server's dispatcher thread, without blocking:
+ * at most maxInFlight searches execute at a time and at most maxQueued more
+ * wait for their turn, and requests beyond that are shed at once with a 503
+ * response. Admitted searches which waited longer than maxQueueMillis are shed
+ * too, rather than served late. Searches run on virtual threads when the JVM
+ * supports them, and otherwise on a pool of maxInFlight platform threads.
+ * <p>
+ * Concurrent requests for the same search share a single execution: they
+ * neither take admission permits nor hold threads, and their responses are
+ * sent when the shared search completes.
+ */
+public class PassageSearchServer implements Closeable {
+
+	private static final Gson GSON = new Gson();
+
+	private final IndexSearcher searcher;
+	private final Analyzer analyzer;
+	private final PassageSearcher passageSearcher;
+	private final QACorpusStore corpus;
+	private final long maxQueueNanos;
+	private final Semaphore admitted;
+	private final Semaphore running;
+	private final ConcurrentMap<SearchKey, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+	private final ExecutorService executor;
+	private final HttpServer server;
+
+	private final AtomicLong numRequests = new AtomicLong();
+	private final AtomicLong numExecuted = new AtomicLong();
+	private final AtomicLong numCoalesced = new AtomicLong();
+	private final AtomicLong numShed = new AtomicLong();
+	private final HistogramPassageSearchMetrics metrics = new HistogramPassageSearchMetrics();
+
+	/**
+	 * Constructs a server which returns passages only. The server is not
+	 * started.
+	 *
+	 * @param address
+	 *            the address to listen on.
+	 * @param searcher
+	 *            the {@link IndexSearcher} to search the top documents with.
+	 * @param analyzer
+	 *            the {@link Analyzer} to parse queries with.
+	 * @param passageSearcher
+	 *            the {@link PassageSearcher} to extract passages with, must be
+	 *            thread-safe.
+	 * @param maxInFlight
+	 *            the maximum number of searches executing at a time.
+	 * @param maxQueued
+	 *            the maximum number of admitted searches waiting to execute.
+	 * @param maxQueueMillis
+	 *            how long an admitted search may wait to execute before it is
+	 *            shed.
+	 */
+	public PassageSearchServer(InetSocketAddress address, IndexSearcher searcher, Analyzer analyzer,
+			PassageSearcher passageSearcher, int maxInFlight, int maxQueued, long maxQueueMillis) throws IOException {
+		this(address, searcher, analyzer, passageSearcher, null, maxInFlight, maxQueued, maxQueueMillis);
+	}
+
+	/**
+	 * Constructs a server which also returns the question and category of the
+	 * record of each passage. The server is not started.
+	 *
+	 * @param address
+	 *            the address to listen on.
+	 * @param searcher
+	 *            the {@link IndexSearcher} to search the top documents with.
+	 * @param analyzer
+	 *            the {@link Analyzer} to parse queries with.
+	 * @param passageSearcher
+	 *            the {@link PassageSearcher} to extract passages with, must be
+	 *            thread-safe.
+	 * @param corpus
+	 *            the {@link QACorpusStore} to look the passages' records up in,
+	 *            or {@code null}.
+	 * @param maxInFlight
+	 *            the maximum number of searches executing at a time.
+	 * @param maxQueued
+	 *            the maximum number of admitted searches waiting to execute.
+	 * @param maxQueueMillis
+	 *            how long an admitted search may wait to execute before it is
+	 *            shed.
+	 */
+	public PassageSearchServer(InetSocketAddress address, IndexSearcher searcher, Analyzer analyzer,
+			PassageSearcher passageSearcher, QACorpusStore corpus, int maxInFlight, int maxQueued,
+			long maxQueueMillis) throws IOException {
+		if (maxInFlight <= 0 || maxQueued < 0) {
+			throw new IllegalArgumentException(Utils.format(
+					"maxInFlight [%d] must be positive and maxQueued [%d] non-negative", maxInFlight, maxQueued));
+		}
+		this.searcher = searcher;
+		this.analyzer = analyzer;
+		this.passageSearcher = passageSearcher;
+		this.corpus = corpus;
+		this.maxQueueNanos = TimeUnit.MILLISECONDS.toNanos(maxQueueMillis);
+		this.admitted = new Semaphore(maxInFlight + maxQueued);
+		this.running = new Semaphore(maxInFlight);
+		this.executor = newExecutor(maxInFlight);
+		this.server = HttpServer.create(address, 0);
+		// Handlers run on the dispatcher thread, and never block it.
+		server.setExecutor(null);
+		server.createContext("/search", this::handleSearch);
+		server.createContext("/stats", this::handleStats);
+	}
+
+	/**
+	 * Returns an executor which runs each search on a new virtual thread if the
+	 * JVM supports them (Java 21+), or else a pool of maxInFlight platform
+	 * threads. Either way, the number of pending tasks is bounded by admission.
+	 */
+	private static ExecutorService newExecutor(int maxInFlight) {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			final AtomicInteger threadNum = new AtomicInteger();
+			return Executors.newFixedThreadPool(maxInFlight, r -> {
+				final Thread thread = new Thread(r, "passage-search-" + threadNum.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	/** Starts serving requests. */
+	public void start() {
+		server.start();
+	}
+
+	/** Returns the address the server listens on. */
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	private void handleSearch(HttpExchange exchange) {
+		numRequests.incrementAndGet();
+		final SearchKey key;
+		try {
+			final Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+			final String q = params.get("q");
+			if (q == null || q.isEmpty()) {
+				throw new IllegalArgumentException("Missing parameter [q]");
+			}
+			key = new SearchKey(q, intParam(params, "docs", 100), intParam(params, "passages", 5),
+					intParam(params, "length", 250), Boolean.parseBoolean(params.get("debug")));
+		} catch (IllegalArgumentException | UnsupportedEncodingException e) {
+			respond(exchange, null, e);
+			return;
+		}
+
+		final CompletableFuture<byte[]> future = new CompletableFuture<>();
+		final CompletableFuture<byte[]> existing = inFlight.putIfAbsent(key, future);
+		if (existing != null) {
+			// An identical search is pending, respond when it completes.
+			numCoalesced.incrementAndGet();
+			existing.whenComplete((body, t) -> respond(exchange, body, t));
+			return;
+		}
+		future.whenComplete((body, t) -> respond(exchange, body, t));
+		if (!admitted.tryAcquire()) {
+			shed(key, future);
+			return;
+		}
+		final long admittedNanos = System.nanoTime();
+		executor.execute(() -> {
+			boolean overloaded = false;
+			byte[] body = null;
+			Throwable failure = null;
+			try {
+				// Wait for a running slot for what is left of maxQueueMillis, which
+				// may already be spent in the pool's queue.
+				final long remainingNanos = maxQueueNanos - (System.nanoTime() - admittedNanos);
+				overloaded = remainingNanos <= 0 || !running.tryAcquire(remainingNanos, TimeUnit.NANOSECONDS);
+				if (!overloaded) {
+					try {
+						numExecuted.incrementAndGet();
+						body = execute(key);
+					} finally {
+						running.release();
+					}
+				}
+			} catch (Throwable t) {
+				failure = t;
+			} finally {
+				admitted.release();
+			}
+			// Completing the future sends the responses of the search and of its
+			// followers, so it happens once the permits are released: slow clients
+			// must not hold a slot.
+			if (overloaded) {
+				shed(key, future);
+				return;
+			}
+			inFlight.remove(key, future);
+			if (failure == null) {
+				future.complete(body);
+			} else {
+				future.completeExceptionally(failure);
+			}
+		});
+	}
+
+	/** Fails a search as overloaded. Any permits it took must be released first. */
+	private void shed(SearchKey key, CompletableFuture<byte[]> future) {
+		numShed.incrementAndGet();
+		inFlight.remove(key, future);
+		future.completeExceptionally(new Overloaded());
+	}
+
+	/** Sends the response of a search, or of its failure, and closes the exchange. */
+	private static void respond(HttpExchange exchange, byte[] body, Throwable t) {
+		try {
+			if (t == null) {
+				send(exchange, 200, body);
+			} else if (t instanceof Overloaded) {
+				exchange.getResponseHeaders().set("Retry-After", "1");
+				send(exchange, 503, error("Overloaded, try again later"));
+			} else if (t instanceof ParseException || t instanceof IllegalArgumentException
+					|| t instanceof UnsupportedEncodingException) {
+				send(exchange, 400, error(t.getMessage()));
+			} else {
+				send(exchange, 500, error(String.valueOf(t)));
+			}
+		} catch (IOException e) {
+			// The client went away.
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/** Executes a search, and returns its JSON response. */
+	private byte[] execute(SearchKey key) throws IOException, ParseException {
+		final long startNanos = System.nanoTime();
+		// QueryParser is not thread-safe, so a new one is created per search.
+		final Query query = new QueryParser(QADataIndexer.BODY_FIELD, analyzer).parse(key.query);
+		final TopDocs topDocs = searcher.search(query, key.numDocs);
+		final PassageSearchProfile profile = key.debug ? new PassageSearchProfile() : null;
+		final List<Passage> passages = passageSearcher.search(query, topDocs, key.numPassages, key.passageLength,
+				profile == null ? metrics : PassageSearchMetrics.tee(metrics, profile));
+		final SearchResponse response = new SearchResponse(key.query, passages, corpus,
+				(System.nanoTime() - startNanos) / 1e6, profile == null ? null : new ProfileJson(profile));
+		return GSON.toJson(response).getBytes(StandardCharsets.UTF_8);
+	}
+
+	private void handleStats(HttpExchange exchange) throws IOException {
+		try {
+			final Map<String, Object> stats = new HashMap<>();
+			stats.put("requests", numRequests.get());
+			stats.put("executed", numExecuted.get());
+			stats.put("coalesced", numCoalesced.get());
+			stats.put("shed", numShed.get());
+			stats.put("in_flight", inFlight.size());
+			final Map<String, HistogramJson> stages = new LinkedHashMap<>();
+			for (final PassageSearchMetrics.Stage stage : PassageSearchMetrics.Stage.values()) {
+				stages.put(stage.name().toLowerCase(Locale.ROOT), new HistogramJson(metrics.getHistogram(stage), 1e-6));
+			}
+			stats.put("stages_ms", stages);
+			final Map<String, HistogramJson> counts = new LinkedHashMap<>();
+			for (final PassageSearchMetrics.Count count : PassageSearchMetrics.Count.values()) {
+				counts.put(count.name().toLowerCase(Locale.ROOT), new HistogramJson(metrics.getHistogram(count), 1));
+			}
+			stats.put("counts", counts);
+			send(exchange, 200, GSON.toJson(stats).getBytes(StandardCharsets.UTF_8));
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	private static byte[] error(String message) {
+		final Map<String, String> error = new HashMap<>();
+		error.put("error", message);
+		return GSON.toJson(error).getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static Map<String, String> parseQuery(String rawQuery) throws UnsupportedEncodingException {
+		final Map<String, String> params = new HashMap<>();
+		if (rawQuery == null) {
+			return params;
+		}
+		for (final String param : rawQuery.split("&")) {
+			final int eq = param.indexOf('=');
+			if (eq > 0) {
+				params.put(URLDecoder.decode(param.substring(0, eq), "UTF-8"),
+						URLDecoder.decode(param.substring(eq + 1), "UTF-8"));
+			}
+		}
+		return params;
+	}
+
+	private static int intParam(Map<String, String> params, String name, int defaultValue) {
+		final String value = params.get(name);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			final int intValue = Integer.parseInt(value);
+			if (intValue <= 0) {
+				throw new IllegalArgumentException(Utils.format("Parameter [%s] must be positive: %s", name, value));
+			}
+			return intValue;
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(Utils.format("Parameter [%s] is not a number: %s", name, value));
+		}
+	}
+
+	/** Returns the metrics of the searches executed so far. */
+	public HistogramPassageSearchMetrics getMetrics() {
+		return metrics;
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	/** Fails searches which are shed. */
+	private static class Overloaded extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		Overloaded() {
+			super("Overloaded", null, false, false);
+		}
+	}
+
+	/** Identifies identical searches. */
+	private static final class SearchKey {
+		final String query;
+		final int numDocs;
+		final int numPassages;
+		final int passageLength;
+		final boolean debug;
+
+		SearchKey(String query, int numDocs, int numPassages, int passageLength, boolean debug) {
+			this.query = query;
+			this.numDocs = numDocs;
+			this.numPassages = numPassages;
+			this.passageLength = passageLength;
+			this.debug = debug;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(query, numDocs, numPassages, passageLength, debug);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof SearchKey)) {
+				return false;
+			}
+			final SearchKey other = (SearchKey) obj;
+			return query.equals(other.query) && numDocs == other.numDocs && numPassages == other.numPassages
+					&& passageLength == other.passageLength && debug == other.debug;
+		}
+	}
+
+	/** The JSON response of a search. */
+	private static class SearchResponse {
+		final String query;
+		final double took_ms;
+		final List<PassageJson> passages;
+		final ProfileJson profile;
+
+		SearchResponse(String query, List<Passage> passages, QACorpusStore corpus, double tookMillis,
+				ProfileJson profile) {
+			this.query = query;
+			this.took_ms = tookMillis;
+			this.passages = new ArrayList<>(passages.size());
+			for (final Passage passage : passages) {
+				this.passages.add(new PassageJson(passage, corpus == null ? null : corpus.get(passage.getDocID())));
+			}
+			this.profile = profile;
+		}
+	}
+
+	/** The JSON form of a {@link PassageSearchProfile}. */
+	private static class ProfileJson {
+		final Map<String, Double> stages_ms = new LinkedHashMap<>();
+		final Map<String, Long> counts = new LinkedHashMap<>();
+
+		ProfileJson(PassageSearchProfile profile) {
+			for (final PassageSearchMetrics.Stage stage : PassageSearchMetrics.Stage.values()) {
+				stages_ms.put(stage.name().toLowerCase(Locale.ROOT), profile.getNanos(stage) / 1e6);
+			}
+			for (final PassageSearchMetrics.Count count : PassageSearchMetrics.Count.values()) {
+				counts.put(count.name().toLowerCase(Locale.ROOT), profile.getCount(count));
+			}
+		}
+	}
+
+	/** The JSON form of a {@link LongHistogram}, with its values scaled. */
+	private static class HistogramJson {
+		final long count;
+		final double mean;
+		final double p50;
+		final double p95;
+		final double p99;
+		final double max;
+
+		HistogramJson(LongHistogram histogram, double scale) {
+			this.count = histogram.getCount();
+			this.mean = histogram.getMean() * scale;
+			this.p50 = histogram.getPercentile(50) * scale;
+			this.p95 = histogram.getPercentile(95) * scale;
+			this.p99 = histogram.getPercentile(99) * scale;
+			this.max = histogram.getMax() * scale;
+		}
+	}
+
+	/** The JSON form of a {@link Passage}. */
+	private static class PassageJson {
+		final String doc_id;
+		final double doc_score;
+		final double score;
+		final int start_offset;
+		final int end_offset;
+		final String text;
+		final String question;
+		final String category;
+
+		PassageJson(Passage passage, QACorpusStore.Record record) {
+			this.doc_id = passage.getDocID();
+			this.doc_score = passage.getDocScore();
+			this.score = passage.getScore();
+			this.start_offset = passage.getStartOffset();
+			this.end_offset = passage.getEndOffset();
+			this.text = passage.getText();
+			this.question = record == null ? null : record.getQuestion();
+			this.category = record == null ? null : record.getMainCategory();
+		}
+	}
+
+	/**
+	 * Usage: PassageSearchServer &lt;index dir&gt; [port] [max in flight] [max
+	 * queued] [max queue millis] [corpus store file]
+	 */
+	public static void main(String[] args) throws Exception {
+		final String indexPath = args[0];
+		final int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+		final int maxInFlight = args.length > 2 ? Integer.parseInt(args[2])
+				: Runtime.getRuntime().availableProcessors();
+		final int maxQueued = args.length > 3 ? Integer.parseInt(args[3]) : 4 * maxInFlight;
+		final long maxQueueMillis = args.length > 4 ? Long.parseLong(args[4]) : 200;
+		final QACorpusStore corpus = args.length > 5 ? QACorpusStore.open(Paths.get(args[5])) : null;
+
+		final Directory dir = FSDirectory.open(Paths.get(indexPath));
+		final DirectoryReader reader = DirectoryReader.open(dir);
+		final Analyzer analyzer = new EnglishAnalyzer();
+		final IndexSearcher searcher = new IndexSearcher(reader);
+		final PassageSearchServer server = new PassageSearchServer(new InetSocketAddress(port), searcher, analyzer,
+				new TermVectorsPassageSearcher(searcher, QADataIndexer.BODY_FIELD, 0.1,
+						PassageScorer.DOC_SCORE_AND_QUERY_TF),
+				corpus, maxInFlight, maxQueued, maxQueueMillis);
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			server.close();
+			try {
+				reader.close();
+				dir.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			analyzer.close();
+		}));
+		server.start();
+		System.out.println("Listening on " + server.getAddress());
+	}
+
+}
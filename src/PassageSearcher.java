@@ -28,4 +28,14 @@ public interface PassageSearcher {
 	/** Extracts relevant passages to a query from a given set of documents. */
 	List<Passage> search(Query query, TopDocs topDocs, int numPassages, int passageLength) throws IOException;
 
+	/**
+	 * Extracts relevant passages to a query from a given set of documents, and
+	 * records the timings and counts of the search's stages. Searchers which are
+	 * not instrumented record nothing.
+	 */
+	default List<Passage> search(Query query, TopDocs topDocs, int numPassages, int passageLength,
+			PassageSearchMetrics metrics) throws IOException {
+		return search(query, topDocs, numPassages, passageLength);
+	}
+
 }
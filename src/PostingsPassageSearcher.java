@@ -0,0 +1,195 @@
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required byOCP applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+
+/**
+ * A {@link PassageSearcher} which reads the query terms' offsets from the
+ * postings, and therefore requires the field to be indexed with
+ * {@link IndexOptions#DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS} but not with
+ * term vectors. It produces the same passages as
+ * {@link TermVectorsPassageSearcher}.
+ */
+public class PostingsPassageSearcher implements PassageSearcher {
+
+	private static final Comparator<ScoreDoc> BY_DOC = (sd1, sd2) -> Integer.compare(sd1.doc, sd2.doc);
+
+	private final IndexSearcher searcher;
+	private final String field;
+	private final double overlapRatio;
+	private final PassageScorer passageScorer;
+
+	/**
+	 * Sole constructor.
+	 *
+	 * @param searcher
+	 *            the {@link IndexSearcher} to use for searching documents.
+	 * @param field
+	 *            the field from which to extract candidate passages.
+	 * @param overlapRatio
+	 *            the percentage of overlapping characters between passages.
+	 * @param passageScorer
+	 *            the {@link PassageScorer} to use for scoring passages.
+	 */
+	public PostingsPassageSearcher(IndexSearcher searcher, String field, double overlapRatio,
+			PassageScorer passageScorer) {
+		this.searcher = searcher;
+		this.field = field;
+		this.overlapRatio = overlapRatio;
+		this.passageScorer = passageScorer;
+	}
+
+	@Override
+	public List<Passage> search(Query query, TopDocs topDocs, int numPassages, int passageLength) throws IOException {
+		return search(query, topDocs, numPassages, passageLength, PassageSearchMetrics.NONE);
+	}
+
+	@Override
+	public List<Passage> search(Query query, TopDocs topDocs, int numPassages, int passageLength,
+			PassageSearchMetrics metrics) throws IOException {
+		// Per-document timings and counts are summed, and recorded once per search.
+		final PassageSearchProfile profile = new PassageSearchProfile();
+		final List<Passage> passages = searchPassages(query, topDocs, numPassages, passageLength, profile);
+		profile.recordTo(metrics);
+		return passages;
+	}
+
+	private List<Passage> searchPassages(Query query, TopDocs topDocs, int numPassages, int passageLength,
+			PassageSearchMetrics metrics) throws IOException {
+		long start = System.nanoTime();
+		final QueryTermTable termTable = QueryTermTable.of(query, searcher, field);
+		metrics.record(PassageSearchMetrics.Stage.QUERY_TERMS, System.nanoTime() - start);
+		final PassageLayout layout = new PassageLayout(passageLength, overlapRatio);
+		final DocLookup docLookup = new DocLookup(searcher);
+		final TopPassagesCollector collector = new TopPassagesCollector(numPassages);
+
+		// Visit the top docs in doc ID order, so that each term's postings are only
+		// advanced forward, one segment at a time.
+		final ScoreDoc[] scoreDocs = topDocs.scoreDocs.clone();
+		Arrays.sort(scoreDocs, BY_DOC);
+		final List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+		int i = 0;
+		while (i < scoreDocs.length) {
+			final LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(scoreDocs[i].doc, leaves));
+			final int leafEnd = leaf.docBase + leaf.reader().maxDoc();
+			start = System.nanoTime();
+			final PostingsEnum[] postings = termPostings(leaf.reader(), termTable);
+			metrics.record(PassageSearchMetrics.Stage.TERM_OFFSETS, System.nanoTime() - start);
+			for (; i < scoreDocs.length && scoreDocs[i].doc < leafEnd; i++) {
+				final ScoreDoc sd = scoreDocs[i];
+				start = System.nanoTime();
+				final DocLookup.Doc doc = docLookup.get(sd.doc);
+				if (doc.text != null) {
+					metrics.count(PassageSearchMetrics.Count.TEXT_BYTES, 2L * doc.text.length());
+				}
+				long end = System.nanoTime();
+				metrics.record(PassageSearchMetrics.Stage.DOC_LOOKUP, end - start);
+				start = end;
+				final List<Passage> docPassages = layout.passages(doc.id, sd.doc, sd.score, doc.textLength,
+						termTable.getTexts());
+				end = System.nanoTime();
+				metrics.record(PassageSearchMetrics.Stage.LAYOUT, end - start);
+				start = end;
+				final int leafDoc = sd.doc - leaf.docBase;
+				int numHits = 0;
+				for (int termOrd = 0; termOrd < postings.length; termOrd++) {
+					final PostingsEnum termPostings = postings[termOrd];
+					if (termPostings == null) {
+						continue; // query term not found in segment.
+					}
+					if (termPostings.docID() < leafDoc) {
+						termPostings.advance(leafDoc);
+					}
+					if (termPostings.docID() != leafDoc) {
+						continue; // query term not found in document.
+					}
+					for (int j = 0; j < termPostings.freq(); j++) {
+						termPostings.nextPosition();
+						layout.addHit(docPassages, termOrd, termPostings.startOffset(), termPostings.endOffset());
+					}
+					numHits += termPostings.freq();
+				}
+				end = System.nanoTime();
+				metrics.record(PassageSearchMetrics.Stage.TERM_OFFSETS, end - start);
+				start = end;
+				// Score the doc's passages and keep only those which make it to the top.
+				passageScorer.score(docPassages);
+				end = System.nanoTime();
+				metrics.record(PassageSearchMetrics.Stage.SCORE, end - start);
+				start = end;
+				collector.collectAll(docPassages);
+				metrics.record(PassageSearchMetrics.Stage.COLLECT, System.nanoTime() - start);
+				metrics.count(PassageSearchMetrics.Count.DOCS, 1);
+				metrics.count(PassageSearchMetrics.Count.CANDIDATES, docPassages.size());
+				metrics.count(PassageSearchMetrics.Count.HITS, numHits);
+			}
+		}
+
+		// Load the text of the top-scoring passages.
+		final List<Passage> passages = collector.getTopPassages();
+		start = System.nanoTime();
+		final long loaded = docLookup.materialize(passages);
+		metrics.record(PassageSearchMetrics.Stage.LOAD_TEXT, System.nanoTime() - start);
+		metrics.count(PassageSearchMetrics.Count.TEXT_BYTES, 2 * loaded);
+		return passages;
+	}
+
+	/**
+	 * Returns the postings, with offsets, of each query term in the given segment,
+	 * or {@code null} for terms which do not appear in it.
+	 */
+	private PostingsEnum[] termPostings(LeafReader reader, QueryTermTable termTable) throws IOException {
+		final PostingsEnum[] postings = new PostingsEnum[termTable.size()];
+		final Terms terms = reader.terms(field);
+		if (terms == null) {
+			return postings; // no document in the segment has the field.
+		}
+		final FieldInfo fieldInfo = reader.getFieldInfos().fieldInfo(field);
+		if (fieldInfo.getIndexOptions().compareTo(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS) < 0) {
+			throw new IllegalStateException(Utils.format("Field [%s] was indexed without offsets", field));
+		}
+		final TermsEnum termsEnum = terms.iterator();
+		for (int termOrd = 0; termOrd < postings.length; termOrd++) {
+			if (termsEnum.seekExact(termTable.getTerm(termOrd).bytes())) {
+				postings[termOrd] = termsEnum.postings(null, PostingsEnum.OFFSETS);
+				if (postings[termOrd].docID() == DocIdSetIterator.NO_MORE_DOCS) {
+					postings[termOrd] = null;
+				}
+			}
+		}
+		return postings;
+	}
+
+}
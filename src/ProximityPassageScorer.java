@@ -0,0 +1,183 @@
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required byOCP applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.List;
+
+/**
+ * A {@link PassageScorer} which rewards passages whose query terms appear close
+ * to each other. For each passage it finds the smallest window covering all the
+ * distinct query terms the passage contains, and scores the passage by
+ * {@code docScore * numDistinctTerms * (1 + proximity)}, where proximity is the
+ * fraction of that window which is covered by the terms themselves (0 for
+ * passages with a single distinct term).
+ * <p>
+ * The window is found with a single merge pass over the hits of each term,
+ * ordered by their offsets, using a heap of the distinct terms. Instances are
+ * thread-safe.
+ */
+public class ProximityPassageScorer implements PassageScorer {
+
+	@Override
+	public void score(List<Passage> passages) {
+		final Buffers buffers = new Buffers();
+		for (final Passage passage : passages) {
+			passage.setScore(score(passage, buffers));
+		}
+	}
+
+	/** Proximity is at most 1, so a passage scores at most twice its distinct terms. */
+	@Override
+	public double maxScore(double docScore, String[] terms, int[] termFreqs) {
+		int numDistinct = 0;
+		for (final int freq : termFreqs) {
+			if (freq > 0) {
+				numDistinct++;
+			}
+		}
+		return 2 * docScore * numDistinct;
+	}
+
+	private static double score(Passage passage, Buffers buffers) {
+		final int numHits = passage.getNumHits();
+		if (numHits == 0) {
+			return 0;
+		}
+		final int numTerms = passage.getTermTable().length;
+		buffers.ensureCapacity(numTerms, numHits);
+
+		// Group the hits by term (counting sort), keeping each term's hits in
+		// order of their offsets.
+		final int[] termStarts = buffers.termStarts;
+		final int[] termUpto = buffers.termUpto;
+		final int[] byTerm = buffers.byTerm;
+		for (int i = 0; i <= numTerms; i++) {
+			termStarts[i] = 0;
+		}
+		for (int i = 0; i < numHits; i++) {
+			termStarts[passage.getHitTerm(i) + 1]++;
+		}
+		int numDistinct = 0;
+		for (int t = 0; t < numTerms; t++) {
+			if (termStarts[t + 1] != 0) {
+				numDistinct++;
+			}
+			termStarts[t + 1] += termStarts[t];
+			termUpto[t] = termStarts[t];
+		}
+		for (int i = 0; i < numHits; i++) {
+			final int t = passage.getHitTerm(i);
+			int j = termUpto[t]++;
+			// Hits of a term are normally added in offset order, so this rarely shifts.
+			while (j > termStarts[t] && passage.getHitStartOffset(byTerm[j - 1]) > passage.getHitStartOffset(i)) {
+				byTerm[j] = byTerm[j - 1];
+				j--;
+			}
+			byTerm[j] = i;
+		}
+		final double docScore = passage.getDocScore();
+		if (numDistinct < 2) {
+			return docScore * numDistinct;
+		}
+
+		// Heap of the distinct terms by the start offset of their current hit,
+		// where termUpto now points to the current hit of each term.
+		final int[] heap = buffers.heap;
+		int heapSize = 0;
+		int maxEnd = Integer.MIN_VALUE;
+		int hitLengths = 0;
+		for (int t = 0; t < numTerms; t++) {
+			if (termStarts[t + 1] != termStarts[t]) {
+				termUpto[t] = termStarts[t];
+				final int hit = byTerm[termUpto[t]];
+				maxEnd = Math.max(maxEnd, passage.getHitEndOffset(hit));
+				hitLengths += passage.getHitEndOffset(hit) - passage.getHitStartOffset(hit);
+				heap[heapSize++] = t;
+			}
+		}
+		for (int i = heapSize / 2 - 1; i >= 0; i--) {
+			siftDown(passage, heap, heapSize, i, byTerm, termUpto);
+		}
+
+		double bestProximity = 0;
+		int bestWindow = Integer.MAX_VALUE;
+		while (true) {
+			final int t = heap[0];
+			final int hit = byTerm[termUpto[t]];
+			final int window = maxEnd - passage.getHitStartOffset(hit);
+			if (window < bestWindow) {
+				bestWindow = window;
+				bestProximity = window <= 0 ? 1 : Math.min(1, (double) hitLengths / window);
+			}
+			if (++termUpto[t] == termStarts[t + 1]) {
+				// The window can no longer cover all the distinct terms.
+				break;
+			}
+			final int next = byTerm[termUpto[t]];
+			hitLengths += passage.getHitEndOffset(next) - passage.getHitStartOffset(next)
+					- (passage.getHitEndOffset(hit) - passage.getHitStartOffset(hit));
+			maxEnd = Math.max(maxEnd, passage.getHitEndOffset(next));
+			siftDown(passage, heap, heapSize, 0, byTerm, termUpto);
+		}
+		return docScore * numDistinct * (1 + bestProximity);
+	}
+
+	private static void siftDown(Passage passage, int[] heap, int heapSize, int i, int[] byTerm, int[] termUpto) {
+		final int t = heap[i];
+		final int start = passage.getHitStartOffset(byTerm[termUpto[t]]);
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= heapSize) {
+				break;
+			}
+			int childStart = passage.getHitStartOffset(byTerm[termUpto[heap[child]]]);
+			if (child + 1 < heapSize) {
+				final int rightStart = passage.getHitStartOffset(byTerm[termUpto[heap[child + 1]]]);
+				if (rightStart < childStart) {
+					child++;
+					childStart = rightStart;
+				}
+			}
+			if (start <= childStart) {
+				break;
+			}
+			heap[i] = heap[child];
+			i = child;
+		}
+		heap[i] = t;
+	}
+
+	/** Arrays which are reused by the passages of a single {@link #score} call. */
+	private static class Buffers {
+		int[] termStarts = new int[1];
+		int[] termUpto = new int[0];
+		int[] heap = new int[0];
+		int[] byTerm = new int[0];
+
+		void ensureCapacity(int numTerms, int numHits) {
+			if (termUpto.length < numTerms) {
+				termStarts = new int[numTerms + 1];
+				termUpto = new int[numTerms];
+				heap = new int[numTerms];
+			}
+			if (byTerm.length < numHits) {
+				byTerm = new int[numHits];
+			}
+		}
+	}
+
+}
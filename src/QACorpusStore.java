@@ -0,0 +1,385 @@
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required byOCP applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.jsonReading.QAData;
+import com.jsonReading.QADataIterator;
+import com.jsonReading.ReadYahooDataBase;
+
+/**
+ * A read-only store of {@link QAData} records in a compact binary file, which
+ * is memory-mapped so that the records stay out of the Java heap and opening
+ * the store does not read them. Records are looked up by ID in constant time
+ * through an open-addressing hash table which is part of the file, and their
+ * fields are only decoded when they are accessed.
+ * <p>
+ * The file consists of a header (magic, version, number of records, number of
+ * hash slots and offset of the hash table), the records, and the hash table.
+ * Each record is the number of its n-best answers (-1 if it has none), the
+ * UTF-8 length of each of its fields (-1 for {@code null}) and then their
+ * UTF-8 bytes. Each hash slot is the offset of a record (0 for empty slots)
+ * and the hash of its ID. Files are limited to 2GB.
+ * <p>
+ * Instances are thread-safe. The mapping is released when the store is garbage
+ * collected.
+ */
+public class QACorpusStore {
+
+	/** The fields of a record, numbered as in {@link Record#getBytes(int)}. */
+	public static final int ID = 0, MAIN_CATEGORY = 1, QUESTION = 2, ANSWER = 3, FIRST_NBEST_ANSWER = 4;
+
+	private static final int MAGIC = 0x51414353; // "QACS"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 20;
+	private static final int SLOT_SIZE = 8;
+
+	private final ByteBuffer buffer;
+	private final int numRecords;
+	private final int tableOffset;
+	private final int slotMask;
+
+	private QACorpusStore(ByteBuffer buffer, Path path) {
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+			throw new IllegalArgumentException(Utils.format("[%s] is not a QA corpus store", path));
+		}
+		if (buffer.getInt(4) != VERSION) {
+			throw new IllegalArgumentException(
+					Utils.format("[%s] has unsupported version [%d]", path, buffer.getInt(4)));
+		}
+		this.buffer = buffer;
+		this.numRecords = buffer.getInt(8);
+		this.slotMask = buffer.getInt(12) - 1;
+		this.tableOffset = buffer.getInt(16);
+	}
+
+	/** Opens the store in the given file, mapping it in memory. */
+	public static QACorpusStore open(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException(Utils.format("[%s] is larger than 2GB", path));
+			}
+			return new QACorpusStore(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), path);
+		}
+	}
+
+	/**
+	 * Writes the given records to a new store in the given file, replacing any
+	 * existing file. Records are streamed to the file, so that only their offsets
+	 * are kept in memory.
+	 *
+	 * @return the number of records written.
+	 */
+	public static int write(Iterator<QAData> records, Path path) throws IOException {
+		boolean success = false;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			final DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(Channels.newOutputStream(channel.position(HEADER_SIZE)), 1 << 16));
+			int[] offsets = new int[1024];
+			int numRecords = 0;
+			long offset = HEADER_SIZE;
+			while (records.hasNext()) {
+				final QAData data = records.next();
+				if (data.getId() == null) {
+					throw new IllegalArgumentException(Utils.format("Record [%d] has no ID", numRecords));
+				}
+				if (numRecords == offsets.length) {
+					offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+				}
+				offsets[numRecords++] = (int) offset;
+				offset += writeRecord(data, out);
+				if (offset > Integer.MAX_VALUE) {
+					throw new IllegalArgumentException(Utils.format("Records exceed 2GB at record [%d]", numRecords));
+				}
+			}
+			out.flush();
+
+			// Hash the IDs of the records, reading them back through a mapping of the
+			// records, at most half of the slots being used.
+			final long maxSlots = Math.max(2, (long) Integer.highestOneBit(Math.max(1, numRecords)) << 2);
+			if (offset + maxSlots * SLOT_SIZE > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException(Utils.format("[%d] records exceed 2GB", numRecords));
+			}
+			final int numSlots = (int) maxSlots;
+			final ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, offset);
+			final int[] slots = new int[2 * numSlots];
+			for (int i = 0; i < numRecords; i++) {
+				final Record record = new Record(mapped, offsets[i]);
+				final ByteBuffer id = record.getBytes(ID);
+				final int hash = hash(id);
+				int slot = hash & (numSlots - 1);
+				while (slots[2 * slot] != 0) {
+					if (slots[2 * slot + 1] == hash && new Record(mapped, slots[2 * slot]).getBytes(ID).equals(id)) {
+						throw new IllegalArgumentException(Utils.format("Duplicate record ID [%s]", record.getId()));
+					}
+					slot = (slot + 1) & (numSlots - 1);
+				}
+				slots[2 * slot] = offsets[i];
+				slots[2 * slot + 1] = hash;
+			}
+			for (final int value : slots) {
+				out.writeInt(value);
+			}
+			out.flush();
+
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(VERSION).putInt(numRecords).putInt(numSlots).putInt((int) offset);
+			header.flip();
+			channel.write(header, 0);
+			success = true;
+			return numRecords;
+		} finally {
+			if (!success) {
+				Files.deleteIfExists(path);
+			}
+		}
+	}
+
+	/** Writes a record, and returns its size in bytes. */
+	private static int writeRecord(QAData data, DataOutputStream out) throws IOException {
+		final List<String> answers = data.getNbestanswers();
+		final List<String> fields = new ArrayList<>(FIRST_NBEST_ANSWER + (answers == null ? 0 : answers.size()));
+		fields.add(data.getId());
+		fields.add(data.getMain_category());
+		fields.add(data.getQuestion());
+		fields.add(data.getAnswer());
+		if (answers != null) {
+			fields.addAll(answers);
+		}
+		final byte[][] bytes = new byte[fields.size()][];
+		int size = 4 + 4 * fields.size();
+		for (int i = 0; i < bytes.length; i++) {
+			if (fields.get(i) != null) {
+				bytes[i] = fields.get(i).getBytes(StandardCharsets.UTF_8);
+				size += bytes[i].length;
+			}
+		}
+		out.writeInt(answers == null ? -1 : answers.size());
+		for (final byte[] field : bytes) {
+			out.writeInt(field == null ? -1 : field.length);
+		}
+		for (final byte[] field : bytes) {
+			if (field != null) {
+				out.write(field);
+			}
+		}
+		return size;
+	}
+
+	/** Returns the hash of a record ID, given its UTF-8 bytes. */
+	private static int hash(ByteBuffer id) {
+		// FNV-1a, then the finalizer of MurmurHash3 to spread the low bits.
+		long h = 0xcbf29ce484222325L;
+		for (int i = id.position(); i < id.limit(); i++) {
+			h = (h ^ (id.get(i) & 0xFF)) * 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		return (int) h;
+	}
+
+	/** Returns the number of records. */
+	public int size() {
+		return numRecords;
+	}
+
+	/** Returns the record with the given ID, or {@code null} if there is none. */
+	public Record get(String id) {
+		final ByteBuffer key = ByteBuffer.wrap(id.getBytes(StandardCharsets.UTF_8));
+		final int hash = hash(key);
+		int slot = hash & slotMask;
+		while (true) {
+			final int slotOffset = tableOffset + slot * SLOT_SIZE;
+			final int offset = buffer.getInt(slotOffset);
+			if (offset == 0) {
+				return null;
+			}
+			if (buffer.getInt(slotOffset + 4) == hash) {
+				final Record record = new Record(buffer, offset);
+				if (record.getBytes(ID).equals(key)) {
+					return record;
+				}
+			}
+			slot = (slot + 1) & slotMask;
+		}
+	}
+
+	/** Hands every record to the consumer, in the order they were written. */
+	public void forEach(Consumer<? super Record> consumer) {
+		int offset = HEADER_SIZE;
+		while (offset < tableOffset) {
+			final Record record = new Record(buffer, offset);
+			consumer.accept(record);
+			offset = record.end();
+		}
+	}
+
+	/**
+	 * A view of a record in the mapped file. Fields are decoded each time they are
+	 * accessed, so callers should keep the values they use repeatedly.
+	 */
+	public static class Record {
+		private final ByteBuffer buffer;
+		private final int offset;
+
+		Record(ByteBuffer buffer, int offset) {
+			this.buffer = buffer;
+			this.offset = offset;
+		}
+
+		/** Returns the number of fields, including the n-best answers. */
+		private int numFields() {
+			return FIRST_NBEST_ANSWER + Math.max(0, buffer.getInt(offset));
+		}
+
+		/** Returns the offset of the first byte after the record. */
+		int end() {
+			final int numFields = numFields();
+			int end = offset + 4 + 4 * numFields;
+			for (int i = 0; i < numFields; i++) {
+				end += Math.max(0, buffer.getInt(offset + 4 + 4 * i));
+			}
+			return end;
+		}
+
+		/**
+		 * Returns the UTF-8 bytes of a field as a read-only view of the mapped file,
+		 * without copying them, or {@code null} if the field is {@code null}.
+		 *
+		 * @param field
+		 *            {@link #ID}, {@link #MAIN_CATEGORY}, {@link #QUESTION},
+		 *            {@link #ANSWER}, or {@link #FIRST_NBEST_ANSWER} plus the index
+		 *            of an n-best answer.
+		 */
+		public ByteBuffer getBytes(int field) {
+			final int numFields = numFields();
+			if (field < 0 || field >= numFields) {
+				throw new IndexOutOfBoundsException(Utils.format("Field [%d] of [%d]", field, numFields));
+			}
+			int start = offset + 4 + 4 * numFields;
+			for (int i = 0; i < field; i++) {
+				start += Math.max(0, buffer.getInt(offset + 4 + 4 * i));
+			}
+			final int length = buffer.getInt(offset + 4 + 4 * field);
+			if (length < 0) {
+				return null;
+			}
+			final ByteBuffer bytes = buffer.asReadOnlyBuffer();
+			bytes.limit(start + length);
+			bytes.position(start);
+			return bytes.slice();
+		}
+
+		/** Returns a field, decoded, or {@code null}. See {@link #getBytes(int)}. */
+		public String getString(int field) {
+			final ByteBuffer bytes = getBytes(field);
+			return bytes == null ? null : StandardCharsets.UTF_8.decode(bytes).toString();
+		}
+
+		public String getId() {
+			return getString(ID);
+		}
+
+		public String getMainCategory() {
+			return getString(MAIN_CATEGORY);
+		}
+
+		public String getQuestion() {
+			return getString(QUESTION);
+		}
+
+		public String getAnswer() {
+			return getString(ANSWER);
+		}
+
+		/** Returns the number of n-best answers. */
+		public int getNumNbestanswers() {
+			return numFields() - FIRST_NBEST_ANSWER;
+		}
+
+		/** Returns the i-th n-best answer. */
+		public String getNbestanswer(int i) {
+			return getString(FIRST_NBEST_ANSWER + i);
+		}
+
+		/** Decodes the whole record. */
+		public QAData toQAData() {
+			final QAData data = decode();
+			if (buffer.getInt(offset) == -1) {
+				data.setNbestanswers(null);
+			}
+			return data;
+		}
+
+		private QAData decode() {
+			final String[] answers = new String[getNumNbestanswers()];
+			for (int i = 0; i < answers.length; i++) {
+				answers[i] = getNbestanswer(i);
+			}
+			return new QAData(getMainCategory(), getQuestion(), answers, getAnswer(), getId());
+		}
+
+		@Override
+		public String toString() {
+			// QAData#toString() does not support records without n-best answers.
+			return decode().toString();
+		}
+	}
+
+	/**
+	 * Usage: QACorpusStore write &lt;json file&gt; &lt;store file&gt;, or
+	 * QACorpusStore get &lt;store file&gt; &lt;id&gt;...
+	 */
+	public static void main(String[] args) throws Exception {
+		final long start = System.nanoTime();
+		if (args[0].equals("write")) {
+			final int numRecords;
+			try (QADataIterator records = ReadYahooDataBase.iterator(args[1])) {
+				numRecords = write(records, Paths.get(args[2]));
+			}
+			System.out.println(
+					Utils.format("Wrote %d records in %.1fs", numRecords, (System.nanoTime() - start) / 1e9));
+			return;
+		}
+		final QACorpusStore store = open(Paths.get(args[1]));
+		System.out.println(
+				Utils.format("Opened %d records in %.2fms", store.size(), (System.nanoTime() - start) / 1e6));
+		for (int i = 2; i < args.length; i++) {
+			final Record record = store.get(args[i]);
+			System.out.println(record == null ? "No record with ID [" + args[i] + "]" : record);
+		}
+	}
+
+}
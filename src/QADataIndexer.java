@@ -0,0 +1,342 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required byOCP applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.document.BinaryDocValuesField;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.index.TieredMergePolicy;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+
+import com.jsonReading.QAData;
+import com.jsonReading.QADataIterator;
+import com.jsonReading.ReadYahooDataBase;
+
+/**
+ * Bulk-indexes {@link QAData} records, fanning batches of documents out to a
+ * number of worker threads which share a single {@link IndexWriter}.
+ */
+public class QADataIndexer {
+
+	public static final String ID_FIELD = "id";
+	public static final String BODY_FIELD = "body";
+	public static final String BODY_LENGTH_FIELD = "body_length";
+	public static final String BODY_SENTENCES_FIELD = "body_sentences";
+	public static final String QUESTION_FIELD = "question";
+	public static final String CATEGORY_FIELD = "main_category";
+
+	public static final FieldType TERM_VECTOR_TYPE;
+	static {
+		TERM_VECTOR_TYPE = new FieldType(TextField.TYPE_STORED);
+		TERM_VECTOR_TYPE.setStoreTermVectors(true);
+		TERM_VECTOR_TYPE.setStoreTermVectorPositions(true);
+		TERM_VECTOR_TYPE.setStoreTermVectorOffsets(true);
+		TERM_VECTOR_TYPE.freeze();
+	}
+
+	/**
+	 * A body field type which indexes offsets in the postings instead of storing
+	 * term vectors, for use with {@link PostingsPassageSearcher}.
+	 */
+	public static final FieldType POSTINGS_OFFSETS_TYPE;
+	static {
+		POSTINGS_OFFSETS_TYPE = new FieldType(TextField.TYPE_STORED);
+		POSTINGS_OFFSETS_TYPE.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+		POSTINGS_OFFSETS_TYPE.freeze();
+	}
+
+	private static final List<QAData> END_OF_INPUT = Collections.emptyList();
+
+	private final IndexWriter[] writers;
+	private final ToIntFunction<QAData> partitioner;
+	private final int numThreads;
+	private final int batchSize;
+	private final Function<QAData, List<Document>> toDocuments;
+
+	/**
+	 * Sole constructor.
+	 *
+	 * @param writer
+	 *            the {@link IndexWriter} shared by all indexing threads.
+	 * @param numThreads
+	 *            the number of indexing threads.
+	 * @param batchSize
+	 *            the number of records added with each call to
+	 *            {@link IndexWriter#addDocuments(Iterable)}.
+	 */
+	public QADataIndexer(IndexWriter writer, int numThreads, int batchSize) {
+		this(writer, numThreads, batchSize, TERM_VECTOR_TYPE);
+	}
+
+	/**
+	 * Constructs an indexer with a custom {@link FieldType} for the
+	 * {@link #BODY_FIELD}, e.g. {@link #POSTINGS_OFFSETS_TYPE}.
+	 */
+	public QADataIndexer(IndexWriter writer, int numThreads, int batchSize, FieldType bodyType) {
+		this(writer, numThreads, batchSize, data -> Collections.singletonList(toDocument(data, bodyType)));
+	}
+
+	/**
+	 * Constructs an indexer which converts each record to a block of documents,
+	 * e.g. with {@link PassageBlocks#toBlock(QAData)}. Blocks are added to the
+	 * index contiguously.
+	 */
+	public QADataIndexer(IndexWriter writer, int numThreads, int batchSize,
+			Function<QAData, List<Document>> toDocuments) {
+		this(new IndexWriter[] { writer }, data -> 0, numThreads, batchSize, toDocuments);
+	}
+
+	/**
+	 * Constructs an indexer which partitions records across several writers, e.g.
+	 * the shards of a {@link ShardedQAIndex}.
+	 *
+	 * @param writers
+	 *            the {@link IndexWriter}s of the partitions.
+	 * @param partitioner
+	 *            returns the index of the writer of a record.
+	 * @param numThreads
+	 *            the number of indexing threads, shared by all writers.
+	 * @param batchSize
+	 *            the number of records converted by a thread at a time. The
+	 *            documents of a batch are added to each writer with a single call
+	 *            to {@link IndexWriter#addDocuments(Iterable)}.
+	 * @param toDocuments
+	 *            converts a record to its document, or block of documents.
+	 */
+	public QADataIndexer(IndexWriter[] writers, ToIntFunction<QAData> partitioner, int numThreads, int batchSize,
+			Function<QAData, List<Document>> toDocuments) {
+		if (numThreads <= 0 || batchSize <= 0) {
+			throw new IllegalArgumentException(
+					Utils.format("numThreads [%d] and batchSize [%d] must be positive", numThreads, batchSize));
+		}
+		this.writers = writers;
+		this.partitioner = partitioner;
+		this.numThreads = numThreads;
+		this.batchSize = batchSize;
+		this.toDocuments = toDocuments;
+	}
+
+	/**
+	 * Returns an {@link IndexWriterConfig} tuned for bulk indexing: a large RAM
+	 * buffer, so that fewer and bigger segments are flushed, and a merge policy
+	 * and scheduler which allow merges to keep up with several indexing threads.
+	 */
+	public static IndexWriterConfig newIndexWriterConfig(Analyzer analyzer, int numThreads) {
+		final TieredMergePolicy mergePolicy = new TieredMergePolicy();
+		mergePolicy.setSegmentsPerTier(20);
+		mergePolicy.setMaxMergeAtOnce(20);
+		final ConcurrentMergeScheduler mergeScheduler = new ConcurrentMergeScheduler();
+		mergeScheduler.setMaxMergesAndThreads(Math.max(6, numThreads + 5), Math.max(1, numThreads / 2));
+		return new IndexWriterConfig(analyzer).setOpenMode(OpenMode.CREATE).setRAMBufferSizeMB(512)
+				.setMergePolicy(mergePolicy).setMergeScheduler(mergeScheduler).setCommitOnClose(true);
+	}
+
+	/** Converts a {@link QAData} record to a Lucene {@link Document}. */
+	public static Document toDocument(QAData data) {
+		return toDocument(data, TERM_VECTOR_TYPE);
+	}
+
+	/**
+	 * Converts a {@link QAData} record to a Lucene {@link Document}, indexing the
+	 * body with the given {@link FieldType}.
+	 */
+	public static Document toDocument(QAData data, FieldType bodyType) {
+		final Document doc = new Document();
+		doc.add(new StringField(ID_FIELD, data.getId(), Store.YES));
+		doc.add(new SortedDocValuesField(ID_FIELD, new BytesRef(data.getId())));
+		if (data.getMain_category() != null) {
+			doc.add(new StringField(CATEGORY_FIELD, data.getMain_category(), Store.YES));
+		}
+		if (data.getQuestion() != null) {
+			doc.add(new TextField(QUESTION_FIELD, data.getQuestion(), Store.YES));
+		}
+		final String body = bodyOf(data);
+		doc.add(new Field(BODY_FIELD, body, bodyType));
+		// Lets passage searchers lay out passages without loading the stored body.
+		doc.add(new NumericDocValuesField(BODY_LENGTH_FIELD, body.length()));
+		// Lets passages of whole sentences be laid out without scanning the body.
+		doc.add(new BinaryDocValuesField(BODY_SENTENCES_FIELD,
+				SentenceBoundaries.encode(SentenceBoundaries.of(body))));
+		return doc;
+	}
+
+	/**
+	 * Returns the text of the {@link #BODY_FIELD}: all the n-best answers, one per
+	 * line, or the best answer if there are none.
+	 */
+	public static String bodyOf(QAData data) {
+		final List<String> answers = data.getNbestanswers();
+		if (answers == null || answers.isEmpty()) {
+			return data.getAnswer() == null ? "" : data.getAnswer();
+		}
+		return String.join("\n", answers);
+	}
+
+	/**
+	 * Indexes all the given records, blocking until they have all been added to
+	 * the writer. The caller is responsible for committing or closing the writer.
+	 */
+	public Stats index(Iterator<QAData> records) throws IOException, InterruptedException {
+		final BlockingQueue<List<QAData>> queue = new ArrayBlockingQueue<>(numThreads * 2);
+		final AtomicLong numRecords = new AtomicLong();
+		final AtomicLong numDocs = new AtomicLong();
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+		final long startNanos = System.nanoTime();
+
+		final List<Thread> threads = new ArrayList<>(numThreads);
+		for (int i = 0; i < numThreads; i++) {
+			final Thread thread = new Thread(() -> {
+				final List<List<Document>> docs = new ArrayList<>(writers.length);
+				for (int w = 0; w < writers.length; w++) {
+					docs.add(new ArrayList<>(Math.max(1, batchSize / writers.length)));
+				}
+				try {
+					List<QAData> batch;
+					while ((batch = queue.take()) != END_OF_INPUT) {
+						for (final QAData data : batch) {
+							docs.get(partitioner.applyAsInt(data)).addAll(toDocuments.apply(data));
+						}
+						for (int w = 0; w < writers.length; w++) {
+							if (!docs.get(w).isEmpty()) {
+								writers[w].addDocuments(docs.get(w));
+								// A record may make several documents, e.g. a block of passages.
+								numDocs.addAndGet(docs.get(w).size());
+								docs.get(w).clear();
+							}
+						}
+						numRecords.addAndGet(batch.size());
+					}
+				} catch (Throwable t) {
+					failure.compareAndSet(null, t);
+					// Keep draining, so that the producer never blocks on a full queue.
+					try {
+						while (queue.take() != END_OF_INPUT) {
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}, "qa-indexer-" + i);
+			thread.start();
+			threads.add(thread);
+		}
+
+		try {
+			List<QAData> batch = new ArrayList<>(batchSize);
+			while (records.hasNext() && failure.get() == null) {
+				batch.add(records.next());
+				if (batch.size() == batchSize) {
+					queue.put(batch);
+					batch = new ArrayList<>(batchSize);
+				}
+			}
+			if (!batch.isEmpty() && failure.get() == null) {
+				queue.put(batch);
+			}
+		} finally {
+			for (int i = 0; i < numThreads; i++) {
+				queue.put(END_OF_INPUT);
+			}
+			for (final Thread thread : threads) {
+				thread.join();
+			}
+		}
+
+		final Throwable t = failure.get();
+		if (t != null) {
+			if (t instanceof IOException) {
+				throw (IOException) t;
+			}
+			throw new IOException("Indexing failed", t);
+		}
+		return new Stats(numRecords.get(), numDocs.get(), System.nanoTime() - startNanos);
+	}
+
+	/** Indexing statistics. */
+	public static class Stats {
+		public final long numRecords;
+		/** The number of Lucene documents, which is larger if records are indexed as blocks. */
+		public final long numDocs;
+		public final long elapsedNanos;
+
+		public Stats(long numRecords, long numDocs, long elapsedNanos) {
+			this.numRecords = numRecords;
+			this.numDocs = numDocs;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		public double docsPerSecond() {
+			return elapsedNanos == 0 ? 0 : numDocs * 1e9 / elapsedNanos;
+		}
+
+		@Override
+		public String toString() {
+			return Utils.format("records=%d, docs=%d, time=%.1fs, docs/sec=%.1f", numRecords, numDocs,
+					elapsedNanos / 1e9, docsPerSecond());
+		}
+	}
+
+	/**
+	 * Usage: QADataIndexer &lt;json file&gt; &lt;index dir&gt; [threads]
+	 * [batch size] [vectors|offsets]
+	 */
+	public static void main(String[] args) throws Exception {
+		final String jsonPath = args.length > 0 ? args[0] : ReadYahooDataBase.DEFAULT_PATH;
+		final String indexPath = args.length > 1 ? args[1] : "index";
+		final int numThreads = args.length > 2 ? Integer.parseInt(args[2])
+				: Runtime.getRuntime().availableProcessors();
+		final int batchSize = args.length > 3 ? Integer.parseInt(args[3]) : 256;
+		final FieldType bodyType = args.length > 4 && args[4].equals("offsets") ? POSTINGS_OFFSETS_TYPE
+				: TERM_VECTOR_TYPE;
+
+		try (Directory dir = FSDirectory.open(Paths.get(indexPath));
+				Analyzer analyzer = new EnglishAnalyzer();
+				IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig(analyzer, numThreads));
+				QADataIterator records = ReadYahooDataBase.iterator(jsonPath)) {
+			final Stats stats = new QADataIndexer(writer, numThreads, batchSize, bodyType).index(records);
+			System.out.println(stats);
+		}
+	}
+
+}
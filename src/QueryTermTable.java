@@ -0,0 +1,78 @@
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required byOCP applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+
+/**
+ * The terms of a query which belong to a given field. Passages refer to the
+ * terms by their ordinal in {@link #getTexts()}, which is shared by all the
+ * passages of a query.
+ */
+public class QueryTermTable {
+
+	private final List<Term> terms;
+	private final String[] texts;
+
+	private QueryTermTable(List<Term> terms) {
+		this.terms = Collections.unmodifiableList(terms);
+		this.texts = new String[terms.size()];
+		for (int i = 0; i < texts.length; i++) {
+			texts[i] = terms.get(i).text();
+		}
+	}
+
+	/** Extracts the terms of the query which belong to the given field. */
+	public static QueryTermTable of(Query query, IndexSearcher searcher, String field) throws IOException {
+		final Set<Term> queryTerms = new HashSet<>();
+		query.createWeight(searcher, false).extractTerms(queryTerms);
+		final List<Term> fieldTerms = new ArrayList<>();
+		for (final Term qTerm : queryTerms) {
+			if (qTerm.field().equals(field)) {
+				fieldTerms.add(qTerm);
+			}
+		}
+		return new QueryTermTable(fieldTerms);
+	}
+
+	public int size() {
+		return texts.length;
+	}
+
+	public Term getTerm(int termOrd) {
+		return terms.get(termOrd);
+	}
+
+	public List<Term> getTerms() {
+		return terms;
+	}
+
+	/** Returns the text of the terms, by ordinal. */
+	public String[] getTexts() {
+		return texts;
+	}
+
+}
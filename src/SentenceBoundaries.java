@@ -0,0 +1,140 @@
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required byOCP applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.text.BreakIterator;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Computes the sentence boundaries of a text, and stores them compactly in a
+ * {@link BinaryDocValues} field, so that passages of whole sentences can be
+ * laid out at query time without scanning the text.
+ * <p>
+ * The boundaries of a text are the start offset of each of its sentences,
+ * followed by the text's length. They are encoded as the vInt deltas between
+ * consecutive boundaries, the first boundary always being 0.
+ */
+public class SentenceBoundaries {
+
+	private static final int[] NO_SENTENCES = new int[] { 0 };
+
+	private SentenceBoundaries() {
+		// No instances.
+	}
+
+	/** Returns the sentence boundaries of the given text. */
+	public static int[] of(String text) {
+		final BreakIterator sentences = BreakIterator.getSentenceInstance(Locale.ENGLISH);
+		sentences.setText(text);
+		int[] boundaries = new int[16];
+		int size = 0;
+		for (int next = sentences.first(); next != BreakIterator.DONE; next = sentences.next()) {
+			if (size == boundaries.length) {
+				boundaries = ArrayUtil.grow(boundaries);
+			}
+			boundaries[size++] = next;
+		}
+		return size == boundaries.length ? boundaries : Arrays.copyOf(boundaries, size);
+	}
+
+	/** Encodes sentence boundaries, as returned by {@link #of(String)}. */
+	public static BytesRef encode(int[] boundaries) {
+		final byte[] bytes = new byte[5 * Math.max(0, boundaries.length - 1)];
+		int size = 0;
+		for (int i = 1; i < boundaries.length; i++) {
+			// Same format as DataOutput#writeVInt.
+			int delta = boundaries[i] - boundaries[i - 1];
+			while ((delta & ~0x7F) != 0) {
+				bytes[size++] = (byte) ((delta & 0x7F) | 0x80);
+				delta >>>= 7;
+			}
+			bytes[size++] = (byte) delta;
+		}
+		return new BytesRef(bytes, 0, size);
+	}
+
+	/** Decodes sentence boundaries encoded by {@link #encode(int[])}. */
+	public static int[] decode(BytesRef bytes) {
+		if (bytes.length == 0) {
+			return NO_SENTENCES;
+		}
+		final ByteArrayDataInput in = new ByteArrayDataInput(bytes.bytes, bytes.offset, bytes.length);
+		// Every boundary takes at least one byte.
+		int[] boundaries = new int[bytes.length + 1];
+		int size = 1;
+		while (!in.eof()) {
+			boundaries[size] = boundaries[size - 1] + in.readVInt();
+			size++;
+		}
+		return Arrays.copyOf(boundaries, size);
+	}
+
+	/**
+	 * Reads the sentence boundaries of a document from the given field.
+	 *
+	 * @throws IllegalStateException
+	 *             if the field does not have doc values.
+	 */
+	public static int[] read(IndexReader reader, int doc, String field) throws IOException {
+		final List<LeafReaderContext> leaves = reader.leaves();
+		final LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(doc, leaves));
+		final BinaryDocValues values = leaf.reader().getBinaryDocValues(field);
+		if (values == null) {
+			throw new IllegalStateException(
+					Utils.format("Document [%d] does not have sentence boundaries indexed in field [%s]", doc, field));
+		}
+		return decode(values.get(doc - leaf.docBase));
+	}
+
+	/**
+	 * Groups consecutive sentences into passages of at most maxLength characters,
+	 * and returns the (start, end) offsets of the passages as consecutive pairs. A
+	 * sentence longer than maxLength makes a passage on its own.
+	 */
+	public static int[] group(int[] boundaries, int maxLength) {
+		final int[] offsets = new int[2 * (boundaries.length - 1)];
+		int size = 0;
+		int start = boundaries[0];
+		int end = start;
+		for (int i = 1; i < boundaries.length; i++) {
+			final int next = boundaries[i];
+			if (next - start > maxLength && end > start) {
+				offsets[size++] = start;
+				offsets[size++] = end;
+				start = end;
+			}
+			end = next;
+		}
+		if (end > start) {
+			offsets[size++] = start;
+			offsets[size++] = end;
+		}
+		return size == offsets.length ? offsets : Arrays.copyOf(offsets, size);
+	}
+
+}
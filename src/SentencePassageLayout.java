@@ -0,0 +1,79 @@
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required byOCP applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lays out passages of whole sentences over a document's text, from sentence
+ * boundaries computed at index time (see {@link SentenceBoundaries}). Passages
+ * group consecutive sentences up to passageLength characters, and do not
+ * overlap.
+ */
+public class SentencePassageLayout {
+
+	private final int passageLength;
+
+	/**
+	 * Sole constructor.
+	 *
+	 * @param passageLength
+	 *            the maximum length, in characters, of the passages. A sentence
+	 *            longer than that makes a passage on its own.
+	 */
+	public SentencePassageLayout(int passageLength) {
+		this.passageLength = passageLength;
+	}
+
+	/**
+	 * Returns the passages of a document with the given sentence boundaries, with
+	 * their offsets set. The text of the passages is not set.
+	 */
+	public List<Passage> passages(String docID, int luceneDocID, double docScore, int[] boundaries,
+			String[] termTable) {
+		final int[] offsets = SentenceBoundaries.group(boundaries, passageLength);
+		final List<Passage> docPassages = new ArrayList<>(offsets.length / 2);
+		for (int i = 0; i < offsets.length; i += 2) {
+			docPassages.add(new Passage().setDocID(docID).setLuceneDocID(luceneDocID).setDocScore(docScore)
+					.setStartOffset(offsets[i]).setEndOffset(offsets[i + 1]).setTermTable(termTable));
+		}
+		return docPassages;
+	}
+
+	/**
+	 * Adds a term occurrence to the passage which contains it, found by binary
+	 * search over the passages' start offsets.
+	 */
+	public void addHit(List<Passage> docPassages, int termOrd, int startOffset, int endOffset) {
+		int lo = 0;
+		int hi = docPassages.size() - 1;
+		while (lo <= hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (docPassages.get(mid).getStartOffset() <= startOffset) {
+				lo = mid + 1;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		// hi is now the last passage which starts at or before the term.
+		if (hi >= 0 && endOffset <= docPassages.get(hi).getEndOffset()) {
+			docPassages.get(hi).addHit(termOrd, startOffset, endOffset);
+		}
+	}
+
+}
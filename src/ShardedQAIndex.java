@@ -0,0 +1,297 @@
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required byOCP applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermContext;
+import org.apache.lucene.search.CollectionStatistics;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermStatistics;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.IOUtils;
+
+import com.jsonReading.QAData;
+import com.jsonReading.QADataIterator;
+import com.jsonReading.ReadYahooDataBase;
+
+/**
+ * A QA index partitioned into shards, each in its own {@link Directory}.
+ * Queries fan out to all the shards concurrently and their top documents are
+ * merged with {@link TopDocs#merge(int, TopDocs[])}; passages are then
+ * extracted from each document by its own shard, and merged again.
+ * <p>
+ * Shards score documents with the term and collection statistics of the whole
+ * index, so that their scores are comparable and merging them is meaningful.
+ * <p>
+ * The {@link Passage#getLuceneDocID() Lucene doc IDs} of the returned passages
+ * are relative to their shard.
+ */
+public class ShardedQAIndex implements Closeable {
+
+	private final List<DirectoryReader> readers;
+	private final MultiReader globalReader;
+	private final IndexSearcher[] searchers;
+	private final PassageSearcher[] passageSearchers;
+	private final Executor executor;
+
+	/**
+	 * Sole constructor.
+	 *
+	 * @param shards
+	 *            the {@link Directory} of each shard.
+	 * @param passageSearchers
+	 *            creates the {@link PassageSearcher} of a shard's
+	 *            {@link IndexSearcher}.
+	 * @param executor
+	 *            the {@link Executor} on which shards are searched, or
+	 *            {@code null} to search them on the calling thread.
+	 */
+	public ShardedQAIndex(Directory[] shards, Function<IndexSearcher, PassageSearcher> passageSearchers,
+			Executor executor) throws IOException {
+		this.readers = new ArrayList<>(shards.length);
+		this.searchers = new IndexSearcher[shards.length];
+		this.passageSearchers = new PassageSearcher[shards.length];
+		this.executor = executor;
+		boolean success = false;
+		try {
+			for (final Directory shard : shards) {
+				readers.add(DirectoryReader.open(shard));
+			}
+			this.globalReader = new MultiReader(readers.toArray(new IndexReader[0]), false);
+			final IndexSearcher globalSearcher = new IndexSearcher(globalReader);
+			for (int i = 0; i < shards.length; i++) {
+				searchers[i] = new GlobalStatisticsSearcher(readers.get(i), globalSearcher);
+				this.passageSearchers[i] = passageSearchers.apply(searchers[i]);
+			}
+			success = true;
+		} finally {
+			if (!success) {
+				IOUtils.closeWhileHandlingException(readers);
+			}
+		}
+	}
+
+	/** Returns a partitioner which assigns records to shards by the hash of their ID. */
+	public static ToIntFunction<QAData> byId(int numShards) {
+		return data -> Math.floorMod(data.getId().hashCode(), numShards);
+	}
+
+	/**
+	 * Returns a partitioner which assigns records to shards by the hash of their
+	 * main category, so that all the records of a category share a shard.
+	 */
+	public static ToIntFunction<QAData> byCategory(int numShards) {
+		return data -> data.getMain_category() == null ? 0
+				: Math.floorMod(data.getMain_category().hashCode(), numShards);
+	}
+
+	/**
+	 * Indexes records into the given shards' writers, which the caller is
+	 * responsible for committing or closing.
+	 */
+	public static QADataIndexer.Stats index(IndexWriter[] writers, Iterator<QAData> records,
+			ToIntFunction<QAData> partitioner, int numThreads, int batchSize) throws IOException, InterruptedException {
+		return new QADataIndexer(writers, partitioner, numThreads, batchSize,
+				data -> Collections.singletonList(QADataIndexer.toDocument(data))).index(records);
+	}
+
+	/** Returns the number of shards. */
+	public int numShards() {
+		return searchers.length;
+	}
+
+	/** Returns the {@link IndexSearcher} of a shard. */
+	public IndexSearcher getSearcher(int shard) {
+		return searchers[shard];
+	}
+
+	/**
+	 * Searches the top documents of all the shards. The
+	 * {@link ScoreDoc#shardIndex} of each document is set to its shard.
+	 */
+	public TopDocs search(Query query, int numDocs) throws IOException {
+		final List<FutureTask<TopDocs>> tasks = new ArrayList<>(searchers.length);
+		for (final IndexSearcher searcher : searchers) {
+			tasks.add(new FutureTask<>(() -> searcher.search(query, numDocs)));
+		}
+		return TopDocs.merge(numDocs, getAll(tasks).toArray(new TopDocs[0]));
+	}
+
+	/**
+	 * Searches the top documents of all the shards, and extracts the top passages
+	 * from them. Each shard extracts the passages of its own documents.
+	 */
+	public List<Passage> searchPassages(Query query, int numDocs, int numPassages, int passageLength)
+			throws IOException {
+		final TopDocs topDocs = search(query, numDocs);
+		// Split the merged top documents back by shard.
+		final List<List<ScoreDoc>> shardDocs = new ArrayList<>(searchers.length);
+		for (int i = 0; i < searchers.length; i++) {
+			shardDocs.add(new ArrayList<>());
+		}
+		for (final ScoreDoc sd : topDocs.scoreDocs) {
+			shardDocs.get(sd.shardIndex).add(sd);
+		}
+		final List<FutureTask<List<Passage>>> tasks = new ArrayList<>(searchers.length);
+		for (int i = 0; i < searchers.length; i++) {
+			final List<ScoreDoc> docs = shardDocs.get(i);
+			if (docs.isEmpty()) {
+				continue;
+			}
+			final PassageSearcher passageSearcher = passageSearchers[i];
+			final TopDocs shardTopDocs = new TopDocs(docs.size(), docs.toArray(new ScoreDoc[0]),
+					docs.get(0).score);
+			tasks.add(new FutureTask<>(
+					() -> passageSearcher.search(query, shardTopDocs, numPassages, passageLength)));
+		}
+		final TopPassagesCollector collector = new TopPassagesCollector(numPassages);
+		for (final List<Passage> passages : getAll(tasks)) {
+			collector.collectAll(passages);
+		}
+		return collector.getTopPassages();
+	}
+
+	/**
+	 * Runs the tasks on the executor, or the calling thread, and returns their
+	 * results in order.
+	 */
+	private <T> List<T> getAll(List<FutureTask<T>> tasks) throws IOException {
+		for (final FutureTask<T> task : tasks) {
+			if (executor == null) {
+				task.run();
+			} else {
+				executor.execute(task);
+			}
+		}
+		final List<T> results = new ArrayList<>(tasks.size());
+		try {
+			for (final FutureTask<T> task : tasks) {
+				results.add(task.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while searching shards", e);
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException("Shard search failed", cause);
+		}
+		return results;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			globalReader.close();
+		} finally {
+			IOUtils.close(readers);
+		}
+	}
+
+	/**
+	 * An {@link IndexSearcher} of a shard, which takes term and collection
+	 * statistics from a searcher of all the shards.
+	 */
+	private static class GlobalStatisticsSearcher extends IndexSearcher {
+		private final IndexSearcher globalSearcher;
+
+		GlobalStatisticsSearcher(IndexReader shardReader, IndexSearcher globalSearcher) {
+			super(shardReader);
+			this.globalSearcher = globalSearcher;
+		}
+
+		@Override
+		public TermStatistics termStatistics(Term term, TermContext context) throws IOException {
+			return globalSearcher.termStatistics(term,
+					TermContext.build(globalSearcher.getIndexReader().getContext(), term));
+		}
+
+		@Override
+		public CollectionStatistics collectionStatistics(String field) throws IOException {
+			return globalSearcher.collectionStatistics(field);
+		}
+	}
+
+	/** Returns the directories of the given number of shards under a root path. */
+	public static Path[] shardPaths(Path root, int numShards) {
+		final Path[] paths = new Path[numShards];
+		for (int i = 0; i < numShards; i++) {
+			paths[i] = root.resolve("shard-" + i);
+		}
+		return paths;
+	}
+
+	/**
+	 * Usage: ShardedQAIndex &lt;json file&gt; &lt;index root&gt; &lt;num
+	 * shards&gt; [id|category] [threads] [batch size]
+	 */
+	public static void main(String[] args) throws Exception {
+		final String jsonPath = args[0];
+		final Path root = Paths.get(args[1]);
+		final int numShards = Integer.parseInt(args[2]);
+		final ToIntFunction<QAData> partitioner = args.length > 3 && args[3].equals("category")
+				? byCategory(numShards) : byId(numShards);
+		final int numThreads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+		final int batchSize = args.length > 5 ? Integer.parseInt(args[5]) : 256;
+
+		final List<Closeable> resources = new ArrayList<>();
+		try (Analyzer analyzer = new EnglishAnalyzer(); QADataIterator records = ReadYahooDataBase.iterator(jsonPath)) {
+			final IndexWriter[] writers = new IndexWriter[numShards];
+			for (int i = 0; i < numShards; i++) {
+				final Directory dir = FSDirectory.open(shardPaths(root, numShards)[i]);
+				resources.add(dir);
+				writers[i] = new IndexWriter(dir, QADataIndexer.newIndexWriterConfig(analyzer, numThreads));
+				resources.add(writers[i]);
+			}
+			System.out.println(index(writers, records, partitioner, numThreads, batchSize));
+		} finally {
+			// Close the writers before their directories.
+			Collections.reverse(resources);
+			IOUtils.close(resources);
+		}
+	}
+
+}
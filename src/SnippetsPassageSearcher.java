@@ -18,9 +18,8 @@
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.Executor;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexReader;
@@ -29,18 +28,48 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.vectorhighlight.FastVectorHighlighter;
+import org.apache.lucene.search.vectorhighlight.FieldFragList;
+import org.apache.lucene.search.vectorhighlight.FieldFragList.WeightedFragInfo;
+import org.apache.lucene.search.vectorhighlight.FieldFragList.WeightedFragInfo.SubInfo;
+import org.apache.lucene.search.vectorhighlight.FieldPhraseList;
+import org.apache.lucene.search.vectorhighlight.FieldPhraseList.WeightedPhraseInfo.Toffs;
 import org.apache.lucene.search.vectorhighlight.FieldQuery;
+import org.apache.lucene.search.vectorhighlight.FieldTermStack;
+import org.apache.lucene.search.vectorhighlight.FragListBuilder;
+import org.apache.lucene.search.vectorhighlight.ScoreOrderFragmentsBuilder;
+import org.apache.lucene.search.vectorhighlight.SimpleFragListBuilder;
 
 public class SnippetsPassageSearcher implements PassageSearcher {
 
+	/** How snippets are turned into passages. */
+	public enum Mode {
+		/**
+		 * Renders highlighted snippets, and locates them and their terms in the
+		 * document's text. The passages' text is the highlighted snippet.
+		 */
+		HIGHLIGHTED,
+		/**
+		 * Takes the offsets of the snippets and their terms directly from the
+		 * highlighter's {@link FieldFragList}, without rendering them. The offsets
+		 * are relative to the document, and only the text of the returned passages is
+		 * loaded.
+		 */
+		OFFSETS
+	}
+
 	private final IndexSearcher searcher;
 	private final String field;
 	private final int numSnippetsPerDoc;
 	private final PassageScorer passageScorer;
 	private final FastVectorHighlighter highlighter;
+	private final Executor executor;
+	private final Mode mode;
+	private final FragListBuilder fragListBuilder = new SimpleFragListBuilder();
+	private final ScoreOrderFragmentsBuilder fragmentsBuilder = new ScoreOrderFragmentsBuilder();
 
 	/**
-	 * Sole constructor.
+	 * Constructs a searcher which extracts passages from the top documents
+	 * serially, on the calling thread.
 	 *
 	 * @param searcher
 	 *            the {@link IndexSearcher} to use for searching documents.
@@ -53,42 +82,195 @@ public class SnippetsPassageSearcher implements PassageSearcher {
 	 */
 	public SnippetsPassageSearcher(IndexSearcher searcher, String field, int numSnippetsPerDoc,
 			PassageScorer passageScorer) {
+		this(searcher, field, numSnippetsPerDoc, passageScorer, null, Mode.HIGHLIGHTED);
+	}
+
+	/**
+	 * Constructs a searcher which extracts passages from the top documents in
+	 * parallel.
+	 *
+	 * @param searcher
+	 *            the {@link IndexSearcher} to use for searching documents.
+	 * @param field
+	 *            the field from which to extract candidate passages.
+	 * @param numSnippetsPerDoc
+	 *            the number of snippets to generate for each document.
+	 * @param passageScorer
+	 *            the {@link PassageScorer} to use for scoring passages, must be
+	 *            thread-safe.
+	 * @param executor
+	 *            the {@link Executor} on which documents are processed, or
+	 *            {@code null} to process them on the calling thread.
+	 */
+	public SnippetsPassageSearcher(IndexSearcher searcher, String field, int numSnippetsPerDoc,
+			PassageScorer passageScorer, Executor executor) {
+		this(searcher, field, numSnippetsPerDoc, passageScorer, executor, Mode.HIGHLIGHTED);
+	}
+
+	/**
+	 * Constructs a searcher which generates passages according to the given
+	 * {@link Mode}.
+	 *
+	 * @param searcher
+	 *            the {@link IndexSearcher} to use for searching documents.
+	 * @param field
+	 *            the field from which to extract candidate passages.
+	 * @param numSnippetsPerDoc
+	 *            the number of snippets to generate for each document.
+	 * @param passageScorer
+	 *            the {@link PassageScorer} to use for scoring passages, must be
+	 *            thread-safe if an executor is given.
+	 * @param executor
+	 *            the {@link Executor} on which documents are processed, or
+	 *            {@code null} to process them on the calling thread.
+	 * @param mode
+	 *            how snippets are turned into passages.
+	 */
+	public SnippetsPassageSearcher(IndexSearcher searcher, String field, int numSnippetsPerDoc,
+			PassageScorer passageScorer, Executor executor, Mode mode) {
 		this.searcher = searcher;
 		this.field = field;
 		this.numSnippetsPerDoc = numSnippetsPerDoc;
 		this.passageScorer = passageScorer;
 		this.highlighter = new FastVectorHighlighter();
+		this.executor = executor;
+		this.mode = mode;
 	}
 
 	@Override
 	public List<Passage> search(Query query, TopDocs topDocs, int numPassages, int passageLength) throws IOException {
-		// Generate candidate passages.
-		final IndexReader reader = searcher.getIndexReader();
-		final FieldQuery fieldQuery = highlighter.getFieldQuery(query, reader);
-		final List<Passage> candidatePassages = new ArrayList<>();
-		for (final ScoreDoc sd : topDocs.scoreDocs) {
-			final Document doc = searcher.doc(sd.doc);
-			final String docID = doc.get("id");
-			final String text = doc.get("body");
-			//
-			final String[] snippets = highlighter.getBestFragments(fieldQuery, reader, sd.doc, field, passageLength,
-					numSnippetsPerDoc);
-			for (final String snippet : snippets) {
-				// discount all highlighting tags
-				final Passage passage = new Passage().setDocID(docID).setDocScore(sd.score).setText(snippet);
-				final String cleanText = extractHighlightedTerms(snippet, passage);
-				final int start = text.indexOf(cleanText);
-				passage.setStartOffset(start).setEndOffset(start + cleanText.length());
-				candidatePassages.add(passage);
+		return search(query, topDocs, numPassages, passageLength, PassageSearchMetrics.NONE);
+	}
+
+	/**
+	 * {@inheritDoc} In {@link Mode#HIGHLIGHTED} mode, the highlighter finds the
+	 * query terms and lays out the fragments in one go, which is recorded as
+	 * {@link PassageSearchMetrics.Stage#LAYOUT}.
+	 */
+	@Override
+	public List<Passage> search(Query query, TopDocs topDocs, int numPassages, int passageLength,
+			PassageSearchMetrics metrics) throws IOException {
+		// Per-document timings and counts are summed, and recorded once per search.
+		final PassageSearchProfile profile = new PassageSearchProfile();
+		final List<Passage> passages = searchPassages(query, topDocs, numPassages, passageLength, profile);
+		profile.recordTo(metrics);
+		return passages;
+	}
+
+	private List<Passage> searchPassages(Query query, TopDocs topDocs, int numPassages, int passageLength,
+			PassageSearchMetrics metrics) throws IOException {
+		long start = System.nanoTime();
+		final FieldQuery fieldQuery = highlighter.getFieldQuery(query, searcher.getIndexReader());
+		metrics.record(PassageSearchMetrics.Stage.QUERY_TERMS, System.nanoTime() - start);
+		if (mode == Mode.OFFSETS) {
+			// Generate, score and collect the candidate passages of each document, and
+			// load the text of the top-scoring ones.
+			final DocLookup docLookup = new DocLookup(searcher);
+			final List<Passage> passages = TopPassagesCollector.collect(topDocs.scoreDocs, numPassages, executor,
+					sd -> docFragmentPassages(sd, docLookup, fieldQuery, passageLength, metrics), metrics);
+			start = System.nanoTime();
+			final long loaded = docLookup.materialize(passages);
+			metrics.record(PassageSearchMetrics.Stage.LOAD_TEXT, System.nanoTime() - start);
+			metrics.count(PassageSearchMetrics.Count.TEXT_BYTES, 2 * loaded);
+			return passages;
+		}
+		// Generate, score and collect the candidate passages of each document.
+		return TopPassagesCollector.collect(topDocs.scoreDocs, numPassages, executor,
+				sd -> docPassages(sd, fieldQuery, passageLength, metrics), metrics);
+	}
+
+	/**
+	 * Returns the scored candidate passages of a single document, from the
+	 * offsets of its best fragments.
+	 */
+	private List<Passage> docFragmentPassages(ScoreDoc sd, DocLookup docLookup, FieldQuery fieldQuery,
+			int passageLength, PassageSearchMetrics metrics) throws IOException {
+		long start = System.nanoTime();
+		final FieldTermStack termStack = new FieldTermStack(searcher.getIndexReader(), sd.doc, field, fieldQuery);
+		long end = System.nanoTime();
+		metrics.record(PassageSearchMetrics.Stage.TERM_OFFSETS, end - start);
+		start = end;
+		final FieldPhraseList phraseList = new FieldPhraseList(termStack, fieldQuery, highlighter.getPhraseLimit());
+		final FieldFragList fragList = fragListBuilder.createFieldFragList(phraseList, passageLength);
+		// Pick the best fragments the same way the highlighter does.
+		final List<WeightedFragInfo> fragInfos = fragmentsBuilder.getWeightedFragInfoList(fragList.getFragInfos());
+		final int numFragments = Math.min(numSnippetsPerDoc, fragInfos.size());
+		final List<Passage> docPassages = new ArrayList<>(numFragments);
+		end = System.nanoTime();
+		long layoutNanos = end - start;
+		metrics.count(PassageSearchMetrics.Count.DOCS, 1);
+		if (numFragments == 0) {
+			metrics.record(PassageSearchMetrics.Stage.LAYOUT, layoutNanos);
+			return docPassages;
+		}
+		start = end;
+		final DocLookup.Doc doc = docLookup.get(sd.doc);
+		if (doc.text != null) {
+			metrics.count(PassageSearchMetrics.Count.TEXT_BYTES, 2L * doc.text.length());
+		}
+		end = System.nanoTime();
+		metrics.record(PassageSearchMetrics.Stage.DOC_LOOKUP, end - start);
+		start = end;
+		int numHits = 0;
+		for (final WeightedFragInfo fragInfo : fragInfos.subList(0, numFragments)) {
+			// Fragments near the end of the text may extend past it.
+			final Passage passage = new Passage().setDocID(doc.id).setLuceneDocID(sd.doc).setDocScore(sd.score)
+					.setStartOffset(fragInfo.getStartOffset())
+					.setEndOffset(Math.min(fragInfo.getEndOffset(), doc.textLength));
+			for (final SubInfo subInfo : fragInfo.getSubInfos()) {
+				for (final Toffs toffs : subInfo.getTermsOffsets()) {
+					passage.addTerm(subInfo.getText(),
+							new Passage.Interval(toffs.getStartOffset(), toffs.getEndOffset()));
+				}
+				numHits += subInfo.getTermsOffsets().size();
 			}
+			docPassages.add(passage);
 		}
-		// Score and sort the passages.
-		passageScorer.score(candidatePassages);
-		Collections.sort(candidatePassages, PassageScorer.PASSAGE_COMPARATOR);
+		end = System.nanoTime();
+		metrics.record(PassageSearchMetrics.Stage.LAYOUT, layoutNanos + end - start);
+		start = end;
+		passageScorer.score(docPassages);
+		metrics.record(PassageSearchMetrics.Stage.SCORE, System.nanoTime() - start);
+		metrics.count(PassageSearchMetrics.Count.CANDIDATES, docPassages.size());
+		metrics.count(PassageSearchMetrics.Count.HITS, numHits);
+		return docPassages;
+	}
 
-		// Return the top-scoring passages.
-		return candidatePassages.stream().limit(numPassages).collect(Collectors.toList());
+	/** Returns the scored candidate passages of a single document. */
+	private List<Passage> docPassages(ScoreDoc sd, FieldQuery fieldQuery, int passageLength,
+			PassageSearchMetrics metrics) throws IOException {
+		final IndexReader reader = searcher.getIndexReader();
+		long start = System.nanoTime();
+		final Document doc = searcher.doc(sd.doc);
+		final String docID = doc.get("id");
+		final String text = doc.get("body");
+		metrics.count(PassageSearchMetrics.Count.TEXT_BYTES, 2L * text.length());
+		long end = System.nanoTime();
+		metrics.record(PassageSearchMetrics.Stage.DOC_LOOKUP, end - start);
+		start = end;
+		//
+		final String[] snippets = highlighter.getBestFragments(fieldQuery, reader, sd.doc, field, passageLength,
+				numSnippetsPerDoc);
+		final List<Passage> docPassages = new ArrayList<>(snippets.length);
+		for (final String snippet : snippets) {
+			// discount all highlighting tags
+			final Passage passage = new Passage().setDocID(docID).setLuceneDocID(sd.doc).setDocScore(sd.score)
+					.setText(snippet);
+			final String cleanText = extractHighlightedTerms(snippet, passage);
+			final int startOffset = text.indexOf(cleanText);
+			passage.setStartOffset(startOffset).setEndOffset(startOffset + cleanText.length());
+			docPassages.add(passage);
+		}
+		end = System.nanoTime();
+		metrics.record(PassageSearchMetrics.Stage.LAYOUT, end - start);
+		start = end;
+		passageScorer.score(docPassages);
+		metrics.record(PassageSearchMetrics.Stage.SCORE, System.nanoTime() - start);
+		metrics.count(PassageSearchMetrics.Count.DOCS, 1);
+		metrics.count(PassageSearchMetrics.Count.CANDIDATES, docPassages.size());
+		return docPassages;
 	}
+
 /**
  * 
  * @param snippet 
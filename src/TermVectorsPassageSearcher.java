@@ -17,14 +17,16 @@
  */
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
-import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.PostingsEnum;
 import org.apache.lucene.index.Term;
@@ -37,13 +39,39 @@ import org.apache.lucene.search.TopDocs;
 
 public class TermVectorsPassageSearcher implements PassageSearcher {
 
+	/** How candidate passages are laid out over a document. */
+	public enum Mode {
+		/**
+		 * Fixed-length passages at a fixed stride, which overlap by overlapRatio (see
+		 * {@link PassageLayout}).
+		 */
+		FIXED,
+		/**
+		 * Non-overlapping passages around the densest runs of query terms (see
+		 * {@link DensePassageLayout}). The overlapRatio is ignored.
+		 */
+		DENSE,
+		/**
+		 * Non-overlapping passages of whole sentences (see
+		 * {@link SentencePassageLayout}), from the sentence boundaries indexed in
+		 * {@link QADataIndexer#BODY_SENTENCES_FIELD}. The overlapRatio is ignored.
+		 */
+		SENTENCES
+	}
+
 	private final IndexSearcher searcher;
 	private final String field;
 	private final double overlapRatio;
 	private final PassageScorer passageScorer;
+	private final Executor executor;
+	private final DocDataCache docDataCache;
+	private final Mode mode;
+
+	private static final int[] NO_OFFSETS = new int[0];
 
 	/**
-	 * Sole constructor.
+	 * Constructs a searcher which extracts passages from the top documents
+	 * serially, on the calling thread.
 	 *
 	 * @param searcher
 	 *            the {@link IndexSearcher} to use for searching documents.
@@ -56,78 +84,538 @@ public class TermVectorsPassageSearcher implements PassageSearcher {
 	 */
 	public TermVectorsPassageSearcher(IndexSearcher searcher, String field, double overlapRatio,
 			PassageScorer passageScorer) {
+		this(searcher, field, overlapRatio, passageScorer, null);
+	}
+
+	/**
+	 * Constructs a searcher which extracts passages from the top documents in
+	 * parallel.
+	 *
+	 * @param searcher
+	 *            the {@link IndexSearcher} to use for searching documents.
+	 * @param field
+	 *            the field from which to extract candidate passages.
+	 * @param overlapRatio
+	 *            the percentage of overlapping characters between passages.
+	 * @param passageScorer
+	 *            the {@link PassageScorer} to use for scoring passages, must be
+	 *            thread-safe.
+	 * @param executor
+	 *            the {@link Executor} on which documents are processed, or
+	 *            {@code null} to process them on the calling thread.
+	 */
+	public TermVectorsPassageSearcher(IndexSearcher searcher, String field, double overlapRatio,
+			PassageScorer passageScorer, Executor executor) {
+		this(searcher, field, overlapRatio, passageScorer, executor, null);
+	}
+
+	/**
+	 * Constructs a searcher which reads documents' text and term vectors through
+	 * a {@link DocDataCache}, which may be shared by many searchers.
+	 *
+	 * @param searcher
+	 *            the {@link IndexSearcher} to use for searching documents.
+	 * @param field
+	 *            the field from which to extract candidate passages.
+	 * @param overlapRatio
+	 *            the percentage of overlapping characters between passages.
+	 * @param passageScorer
+	 *            the {@link PassageScorer} to use for scoring passages, must be
+	 *            thread-safe if an executor is given.
+	 * @param executor
+	 *            the {@link Executor} on which documents are processed, or
+	 *            {@code null} to process them on the calling thread.
+	 * @param docDataCache
+	 *            the {@link DocDataCache} to read documents through, or
+	 *            {@code null} to read them from the index on every search.
+	 */
+	public TermVectorsPassageSearcher(IndexSearcher searcher, String field, double overlapRatio,
+			PassageScorer passageScorer, Executor executor, DocDataCache docDataCache) {
+		this(searcher, field, overlapRatio, passageScorer, executor, docDataCache, Mode.FIXED);
+	}
+
+	/**
+	 * Sole constructor.
+	 *
+	 * @param searcher
+	 *            the {@link IndexSearcher} to use for searching documents.
+	 * @param field
+	 *            the field from which to extract candidate passages.
+	 * @param overlapRatio
+	 *            the percentage of overlapping characters between passages.
+	 * @param passageScorer
+	 *            the {@link PassageScorer} to use for scoring passages, must be
+	 *            thread-safe if an executor is given.
+	 * @param executor
+	 *            the {@link Executor} on which documents are processed, or
+	 *            {@code null} to process them on the calling thread.
+	 * @param docDataCache
+	 *            the {@link DocDataCache} to read documents through, or
+	 *            {@code null} to read them from the index on every search.
+	 * @param mode
+	 *            how candidate passages are laid out over a document.
+	 */
+	public TermVectorsPassageSearcher(IndexSearcher searcher, String field, double overlapRatio,
+			PassageScorer passageScorer, Executor executor, DocDataCache docDataCache, Mode mode) {
 		this.searcher = searcher;
 		this.field = field;
 		this.overlapRatio = overlapRatio;
 		this.passageScorer = passageScorer;
+		this.executor = executor;
+		this.docDataCache = docDataCache;
+		this.mode = mode;
 	}
 
 	@Override
 	public List<Passage> search(Query query, TopDocs topDocs, int numPassages, int passageLength) throws IOException {
-		// Extract query terms.
-		final Set<Term> queryTerms = new HashSet<>();
-		query.createWeight(searcher, false).extractTerms(queryTerms);
-		// Generate candidate passages.
+		return search(query, topDocs, numPassages, passageLength, PassageSearchMetrics.NONE);
+	}
+
+	@Override
+	public List<Passage> search(Query query, TopDocs topDocs, int numPassages, int passageLength,
+			PassageSearchMetrics metrics) throws IOException {
+		// Per-document timings and counts are summed, and recorded once per search.
+		final PassageSearchProfile profile = new PassageSearchProfile();
+		final List<Passage> passages = searchPassages(query, topDocs, numPassages, passageLength, profile);
+		profile.recordTo(metrics);
+		return passages;
+	}
+
+	private List<Passage> searchPassages(Query query, TopDocs topDocs, int numPassages, int passageLength,
+			PassageSearchMetrics metrics) throws IOException {
+		// Extract query terms, and keep those of the TV field in a table shared by
+		// all the passages.
+		long start = System.nanoTime();
+		final QueryTermTable termTable = QueryTermTable.of(query, searcher, field);
+		metrics.record(PassageSearchMetrics.Stage.QUERY_TERMS, System.nanoTime() - start);
+		final Layouts layouts = new Layouts(passageLength);
+		if (docDataCache != null) {
+			final List<Passage> passages = TopPassagesCollector.collect(topDocs.scoreDocs, numPassages, executor,
+					sd -> cachedDocPassages(sd, termTable, layouts, metrics), metrics);
+			start = System.nanoTime();
+			for (final Passage passage : passages) {
+				final String text = docDataCache.get(searcher, passage.getLuceneDocID(), field).text;
+				passage.setText(text.substring(passage.getStartOffset(), passage.getEndOffset()));
+			}
+			metrics.record(PassageSearchMetrics.Stage.LOAD_TEXT, System.nanoTime() - start);
+			return passages;
+		}
+		// Generate, score and collect the candidate passages of each document. Only
+		// the offsets of the passages are needed up to this point.
+		final DocLookup docLookup = new DocLookup(searcher);
+		final List<Passage> passages = TopPassagesCollector.collect(topDocs.scoreDocs, numPassages, executor,
+				sd -> docPassages(sd, docLookup, termTable, layouts, metrics), metrics);
+		// Load the text of the top-scoring passages.
+		start = System.nanoTime();
+		final long loaded = docLookup.materialize(passages);
+		metrics.record(PassageSearchMetrics.Stage.LOAD_TEXT, System.nanoTime() - start);
+		metrics.count(PassageSearchMetrics.Count.TEXT_BYTES, 2 * loaded);
+		return passages;
+	}
+
+	/**
+	 * Searches the passages of many queries at once. The top documents of all the
+	 * queries are grouped by document, so that the term vector and the text of a
+	 * document are decoded once per batch, however many queries it is a top
+	 * document of.
+	 *
+	 * @param queries
+	 *            the queries.
+	 * @param topDocs
+	 *            the top documents of each query, in the same order.
+	 * @param numPassages
+	 *            the number of passages to return for each query.
+	 * @param passageLength
+	 *            the length of the passages.
+	 * @return the top passages of each query, in the same order as the queries.
+	 */
+	public List<List<Passage>> search(List<Query> queries, List<TopDocs> topDocs, int numPassages, int passageLength)
+			throws IOException {
+		if (queries.size() != topDocs.size()) {
+			throw new IllegalArgumentException(Utils.format("Got [%d] queries but [%d] top docs", queries.size(),
+					topDocs.size()));
+		}
+		final int numQueries = queries.size();
+		final QueryTermTable[] termTables = new QueryTermTable[numQueries];
+		int numEntries = 0;
+		for (int q = 0; q < numQueries; q++) {
+			termTables[q] = QueryTermTable.of(queries.get(q), searcher, field);
+			numEntries += topDocs.get(q).scoreDocs.length;
+		}
+		// An entry is a (query, top document) pair. Sort the entries by document, so
+		// that each document's entries are consecutive and documents are read in
+		// index order.
+		final int[] entryQueries = new int[numEntries];
+		final ScoreDoc[] entryDocs = new ScoreDoc[numEntries];
+		final long[] sortedEntries = new long[numEntries];
+		int e = 0;
+		for (int q = 0; q < numQueries; q++) {
+			for (final ScoreDoc sd : topDocs.get(q).scoreDocs) {
+				entryQueries[e] = q;
+				entryDocs[e] = sd;
+				sortedEntries[e] = ((long) sd.doc << 32) | e;
+				e++;
+			}
+		}
+		Arrays.sort(sortedEntries);
+
+		final Layouts layouts = new Layouts(passageLength);
+		final DocLookup docLookup = new DocLookup(searcher);
+		final BatchEntries entries = new BatchEntries(entryQueries, entryDocs, sortedEntries, termTables);
+		final TopPassagesCollector[] collectors = new TopPassagesCollector[numQueries];
+		for (int q = 0; q < numQueries; q++) {
+			collectors[q] = new TopPassagesCollector(numPassages);
+		}
+		final List<FutureTask<List<List<Passage>>>> tasks = new ArrayList<>();
+		final List<Integer> taskFroms = new ArrayList<>();
+		for (int from = 0, to; from < numEntries; from = to) {
+			to = from + 1;
+			while (to < numEntries && (sortedEntries[to] >>> 32) == (sortedEntries[from] >>> 32)) {
+				to++;
+			}
+			final int docFrom = from;
+			final int docTo = to;
+			final FutureTask<List<List<Passage>>> task = new FutureTask<>(
+					() -> batchDocPassages(entries, docFrom, docTo, docLookup, layouts, numPassages));
+			if (executor == null) {
+				task.run();
+			} else {
+				executor.execute(task);
+			}
+			tasks.add(task);
+			taskFroms.add(from);
+		}
+		try {
+			for (int t = 0; t < tasks.size(); t++) {
+				final List<List<Passage>> docResults = tasks.get(t).get();
+				for (int i = 0; i < docResults.size(); i++) {
+					final int entry = (int) sortedEntries[taskFroms.get(t) + i];
+					collectors[entryQueries[entry]].collectAll(docResults.get(i));
+				}
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while extracting passages");
+		} catch (ExecutionException ex) {
+			final Throwable cause = ex.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException(cause);
+		} finally {
+			for (final FutureTask<List<List<Passage>>> task : tasks) {
+				task.cancel(false);
+			}
+		}
+
+		final List<List<Passage>> results = new ArrayList<>(numQueries);
+		final List<Passage> allPassages = new ArrayList<>();
+		for (final TopPassagesCollector collector : collectors) {
+			final List<Passage> passages = collector.getTopPassages();
+			results.add(passages);
+			allPassages.addAll(passages);
+		}
+		// Load the text of each document of the top-scoring passages once.
+		if (docDataCache != null) {
+			for (final Passage passage : allPassages) {
+				final String text = docDataCache.get(searcher, passage.getLuceneDocID(), field).text;
+				passage.setText(text.substring(passage.getStartOffset(), passage.getEndOffset()));
+			}
+		} else {
+			docLookup.materialize(allPassages);
+		}
+		return results;
+	}
+
+	/**
+	 * Returns the top passages of each of the given entries, which all share the
+	 * same document.
+	 */
+	private List<List<Passage>> batchDocPassages(BatchEntries entries, int from, int to, DocLookup docLookup,
+			Layouts layouts, int numPassages) throws IOException {
+		final int doc = (int) (entries.sorted[from] >>> 32);
+		final String docID;
+		final int textLength;
+		final TermOffsets termOffsets;
+		if (docDataCache != null) {
+			final DocDataCache.DocData data = docDataCache.get(searcher, doc, field);
+			docID = data.id;
+			textLength = data.text.length();
+			termOffsets = term -> data.offsets(term.text());
+		} else {
+			final DocLookup.Doc lookup = docLookup.get(doc);
+			docID = lookup.id;
+			textLength = lookup.textLength;
+			termOffsets = new TermVectorOffsets(doc);
+		}
+		// The sentence boundaries are decoded once, and laid out for each query.
+		final int[] boundaries = sentenceBoundaries(doc);
+		final List<List<Passage>> results = new ArrayList<>(to - from);
+		for (int i = from; i < to; i++) {
+			final int entry = (int) entries.sorted[i];
+			final QueryTermTable termTable = entries.termTables[entries.queries[entry]];
+			final DocPassages docPassages = new DocPassages(docID, entries.docs[entry], textLength, boundaries,
+					termTable, layouts);
+			for (int termOrd = 0; termOrd < termTable.size(); termOrd++) {
+				final int[] offsets = termOffsets.get(termTable.getTerm(termOrd));
+				for (int j = 0; j < offsets.length; j += 2) {
+					docPassages.addHit(termOrd, offsets[j], offsets[j + 1]);
+				}
+			}
+			final List<Passage> passages = docPassages.get();
+			passageScorer.score(passages);
+			final TopPassagesCollector collector = new TopPassagesCollector(numPassages);
+			collector.collectAll(passages);
+			results.add(collector.getTopPassages());
+		}
+		return results;
+	}
+
+	/** Returns the scored candidate passages of a single document. */
+	private List<Passage> docPassages(ScoreDoc sd, DocLookup docLookup, QueryTermTable termTable, Layouts layouts,
+			PassageSearchMetrics metrics) throws IOException {
 		final IndexReader reader = searcher.getIndexReader();
-		final List<Passage> candidatePassages = new ArrayList<>();
-		for (final ScoreDoc sd : topDocs.scoreDocs) {
-			final Document doc = searcher.doc(sd.doc);
-			final String docID = doc.get("id");
-			final String text = doc.get("body");
-			// Generate candidate passages for document.
-			final List<Passage> docPassages = new ArrayList<>();
-			int start = 0;
-			while (start < text.length()) {
-				final int end = start + Math.min(passageLength, text.length() - start);
-				docPassages.add(new Passage().setDocID(docID).setDocScore(sd.score).setText(text.substring(start, end))
-						.setStartOffset(start).setEndOffset(end));
-				start += passageLength * (1.0 - overlapRatio);
-			}
-			// Search for query terms' occurrence within passages, using document term
-			// vectors.
-			final Terms terms = reader.getTermVector(sd.doc, field);
+		long start = System.nanoTime();
+		final DocLookup.Doc doc = docLookup.get(sd.doc);
+		if (doc.text != null) {
+			metrics.count(PassageSearchMetrics.Count.TEXT_BYTES, 2L * doc.text.length());
+		}
+		long end = System.nanoTime();
+		metrics.record(PassageSearchMetrics.Stage.DOC_LOOKUP, end - start);
+		start = end;
+		final DocPassages docPassages = new DocPassages(doc.id, sd, doc.textLength, sentenceBoundaries(sd.doc),
+				termTable, layouts);
+		end = System.nanoTime();
+		long layoutNanos = end - start;
+		start = end;
+		// Search for query terms' occurrence within the document, using its term
+		// vectors.
+		final Terms terms = reader.getTermVector(sd.doc, field);
+		if (terms == null) {
+			throw new IllegalStateException(
+					Utils.format("Document [%d] does not have term vectors indexed for field [%s]", sd.doc, field));
+		}
+		final TermsEnum termsEnum = terms.iterator();
+		int numHits = 0;
+		for (int termOrd = 0; termOrd < termTable.size(); termOrd++) {
+			if (!termsEnum.seekExact(termTable.getTerm(termOrd).bytes())) {
+				continue; // query term not found in document.
+			}
+			final PostingsEnum postings = termsEnum.postings(null);
+			postings.nextDoc(); // only one document
+			// Iterate over the positions.
+			for (int i = 0; i < postings.freq(); i++) {
+				postings.nextPosition(); // Advance to the next position.
+				docPassages.addHit(termOrd, postings.startOffset(), postings.endOffset());
+			}
+			numHits += postings.freq();
+		}
+		end = System.nanoTime();
+		metrics.record(PassageSearchMetrics.Stage.TERM_OFFSETS, end - start);
+		return scoreDocPassages(docPassages, numHits, end, layoutNanos, metrics);
+	}
+
+	/**
+	 * Returns the scored candidate passages of a single document, whose data is
+	 * read through the {@link DocDataCache}.
+	 */
+	private List<Passage> cachedDocPassages(ScoreDoc sd, QueryTermTable termTable, Layouts layouts,
+			PassageSearchMetrics metrics) throws IOException {
+		long start = System.nanoTime();
+		final DocDataCache.DocData doc = docDataCache.get(searcher, sd.doc, field);
+		long end = System.nanoTime();
+		metrics.record(PassageSearchMetrics.Stage.DOC_LOOKUP, end - start);
+		start = end;
+		final DocPassages docPassages = new DocPassages(doc.id, sd, doc.text.length(), sentenceBoundaries(sd.doc),
+				termTable, layouts);
+		end = System.nanoTime();
+		long layoutNanos = end - start;
+		start = end;
+		int numHits = 0;
+		for (int termOrd = 0; termOrd < termTable.size(); termOrd++) {
+			final int[] offsets = doc.offsets(termTable.getTexts()[termOrd]);
+			for (int i = 0; i < offsets.length; i += 2) {
+				docPassages.addHit(termOrd, offsets[i], offsets[i + 1]);
+			}
+			numHits += offsets.length / 2;
+		}
+		end = System.nanoTime();
+		metrics.record(PassageSearchMetrics.Stage.TERM_OFFSETS, end - start);
+		return scoreDocPassages(docPassages, numHits, end, layoutNanos, metrics);
+	}
+
+	/**
+	 * Returns the sentence boundaries of a document in {@link Mode#SENTENCES}
+	 * mode, and {@code null} otherwise.
+	 */
+	private int[] sentenceBoundaries(int doc) throws IOException {
+		return mode == Mode.SENTENCES
+				? SentenceBoundaries.read(searcher.getIndexReader(), doc, QADataIndexer.BODY_SENTENCES_FIELD)
+				: null;
+	}
+
+	/**
+	 * Lays out the candidate passages of a document once its hits are added, and
+	 * scores them.
+	 *
+	 * @param start
+	 *            when the hits were added, in {@link System#nanoTime()}.
+	 * @param layoutNanos
+	 *            the time already spent laying out the document's passages.
+	 */
+	private List<Passage> scoreDocPassages(DocPassages docPassages, int numHits, long start, long layoutNanos,
+			PassageSearchMetrics metrics) throws IOException {
+		final List<Passage> passages = docPassages.get();
+		long end = System.nanoTime();
+		metrics.record(PassageSearchMetrics.Stage.LAYOUT, layoutNanos + end - start);
+		start = end;
+		passageScorer.score(passages);
+		metrics.record(PassageSearchMetrics.Stage.SCORE, System.nanoTime() - start);
+		metrics.count(PassageSearchMetrics.Count.DOCS, 1);
+		metrics.count(PassageSearchMetrics.Count.CANDIDATES, passages.size());
+		metrics.count(PassageSearchMetrics.Count.HITS, numHits);
+		return passages;
+	}
+
+	/** The (query, top document) entries of a batch search. */
+	private static class BatchEntries {
+		final int[] queries;
+		final ScoreDoc[] docs;
+		/** The entries sorted by document, as (doc << 32 | entry). */
+		final long[] sorted;
+		final QueryTermTable[] termTables;
+
+		BatchEntries(int[] queries, ScoreDoc[] docs, long[] sorted, QueryTermTable[] termTables) {
+			this.queries = queries;
+			this.docs = docs;
+			this.sorted = sorted;
+			this.termTables = termTables;
+		}
+	}
+
+	/** Returns the (start, end) offsets of a term's occurrences in a document. */
+	@FunctionalInterface
+	private interface TermOffsets {
+		int[] get(Term term) throws IOException;
+	}
+
+	/**
+	 * Decodes the offsets of terms from a document's term vector, each term once
+	 * however many queries ask for it.
+	 */
+	private class TermVectorOffsets implements TermOffsets {
+		private final TermsEnum termsEnum;
+		private final Map<Term, int[]> offsets = new HashMap<>();
+		private PostingsEnum postings = null;
+
+		TermVectorOffsets(int doc) throws IOException {
+			final Terms terms = searcher.getIndexReader().getTermVector(doc, field);
 			if (terms == null) {
 				throw new IllegalStateException(
-						Utils.format("Document [%d] does not have term vectors indexed for field [%s]", sd.doc, field));
+						Utils.format("Document [%d] does not have term vectors indexed for field [%s]", doc, field));
 			}
-			final TermsEnum termsEnum = terms.iterator();
-			for (final Term qTerm : queryTerms) {
-				if (!qTerm.field().equals(field)) {
-					continue; // query term does not belong to the TV field.
-				}
-				if (!termsEnum.seekExact(qTerm.bytes())) {
-					continue; // query term not found in document.
-				}
-				final PostingsEnum postings = termsEnum.postings(null);
-				postings.nextDoc(); // only one document
-				// Iterate over the positions.
-				for (int i = 0; i < postings.freq(); i++) {
-					postings.nextPosition(); // Advance to the next position.
-					final int startOffset = postings.startOffset();
-					final int endOffset = postings.endOffset();
-					for (final Passage docPassage : docPassages) {
-						if (docPassage.getStartOffset() <= startOffset && endOffset <= docPassage.getEndOffset()) {
-							// Term belongs to this passage, add it.
-							docPassage.addTerm(qTerm.text(), new Passage.Interval(startOffset, endOffset));
-						} else if (docPassage.getStartOffset() > endOffset) {
-							// Optimization, since the doc passages are sorted in increasing order, if the
-							// passage's
-							// offsets are beyond the scope of this term, no point evaluating other
-							// passages.
-							break;
-						}
+			this.termsEnum = terms.iterator();
+		}
+
+		@Override
+		public int[] get(Term term) throws IOException {
+			int[] termOffsets = offsets.get(term);
+			if (termOffsets == null) {
+				termOffsets = NO_OFFSETS;
+				if (termsEnum.seekExact(term.bytes())) {
+					postings = termsEnum.postings(postings, PostingsEnum.OFFSETS);
+					postings.nextDoc(); // only one document
+					termOffsets = new int[2 * postings.freq()];
+					for (int i = 0; i < postings.freq(); i++) {
+						postings.nextPosition();
+						termOffsets[2 * i] = postings.startOffset();
+						termOffsets[2 * i + 1] = postings.endOffset();
 					}
 				}
+				offsets.put(term, termOffsets);
+			}
+			return termOffsets;
+		}
+	}
+
+	/** The layout of the passages of a search, according to the searcher's mode. */
+	private class Layouts {
+		final PassageLayout fixed;
+		final DensePassageLayout dense;
+		final SentencePassageLayout sentences;
+
+		Layouts(int passageLength) {
+			this.fixed = mode == Mode.FIXED ? new PassageLayout(passageLength, overlapRatio) : null;
+			this.dense = mode == Mode.DENSE ? new DensePassageLayout(passageLength) : null;
+			this.sentences = mode == Mode.SENTENCES ? new SentencePassageLayout(passageLength) : null;
+		}
+	}
+
+	/**
+	 * Builds the candidate passages of a document from its hits: fixed and
+	 * sentence passages are created upfront and receive the hits as they come,
+	 * while dense passages are laid out once all the hits are known.
+	 */
+	private class DocPassages {
+		private final String docID;
+		private final ScoreDoc sd;
+		private final int textLength;
+		private final String[] termTable;
+		private final Layouts layouts;
+		private final List<Passage> passages;
+		private final DensePassageLayout.Hits hits;
+
+		/**
+		 * @param boundaries
+		 *            the document's sentence boundaries in {@link Mode#SENTENCES}
+		 *            mode, which are read once per document however many queries
+		 *            lay them out.
+		 */
+		DocPassages(String docID, ScoreDoc sd, int textLength, int[] boundaries, QueryTermTable termTable,
+				Layouts layouts) {
+			this.docID = docID;
+			this.sd = sd;
+			this.textLength = textLength;
+			this.termTable = termTable.getTexts();
+			this.layouts = layouts;
+			switch (mode) {
+			case DENSE:
+				this.passages = null;
+				this.hits = new DensePassageLayout.Hits();
+				break;
+			case SENTENCES:
+				this.passages = layouts.sentences.passages(docID, sd.doc, sd.score, boundaries, this.termTable);
+				this.hits = null;
+				break;
+			default:
+				this.passages = layouts.fixed.passages(docID, sd.doc, sd.score, textLength, this.termTable);
+				this.hits = null;
 			}
-			candidatePassages.addAll(docPassages);
 		}
 
-		// Score and sort the passages.
-		passageScorer.score(candidatePassages);
-		Collections.sort(candidatePassages, PassageScorer.PASSAGE_COMPARATOR);
+		void addHit(int termOrd, int startOffset, int endOffset) {
+			switch (mode) {
+			case DENSE:
+				hits.add(termOrd, startOffset, endOffset);
+				break;
+			case SENTENCES:
+				layouts.sentences.addHit(passages, termOrd, startOffset, endOffset);
+				break;
+			default:
+				layouts.fixed.addHit(passages, termOrd, startOffset, endOffset);
+			}
+		}
 
-		// Return the top-scoring passages.
-		return candidatePassages.stream().limit(numPassages).collect(Collectors.toList());
+		List<Passage> get() {
+			return mode == Mode.DENSE ? layouts.dense.passages(docID, sd.doc, sd.score, textLength, termTable, hits)
+					: passages;
+		}
 	}
 
 }
@@ -0,0 +1,188 @@
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required byOCP applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import org.apache.lucene.search.ScoreDoc;
+
+/**
+ * Collects the top-scoring passages, according to
+ * {@link PassageScorer#PASSAGE_COMPARATOR}, in a bounded heap so that losing
+ * passages are dropped as soon as they are collected.
+ */
+public class TopPassagesCollector {
+
+	private static final Comparator<Passage> WORST_FIRST = PassageScorer.PASSAGE_COMPARATOR.reversed();
+
+	private final int numPassages;
+	private final PriorityQueue<Passage> queue;
+
+	/**
+	 * Sole constructor.
+	 *
+	 * @param numPassages
+	 *            the number of passages to keep.
+	 */
+	public TopPassagesCollector(int numPassages) {
+		this.numPassages = Math.max(0, numPassages);
+		this.queue = new PriorityQueue<>(Math.max(1, this.numPassages + 1), WORST_FIRST);
+	}
+
+	/**
+	 * Offers a scored passage to the collector. Returns whether the passage is
+	 * currently among the top passages.
+	 */
+	public boolean collect(Passage passage) {
+		if (queue.size() < numPassages) {
+			queue.add(passage);
+			return true;
+		}
+		if (numPassages == 0 || WORST_FIRST.compare(passage, queue.peek()) <= 0) {
+			return false; // not better than the worst passage collected so far.
+		}
+		queue.poll();
+		queue.add(passage);
+		return true;
+	}
+
+	/**
+	 * Returns the score a passage must exceed to make it to the top, or
+	 * {@link Double#NEGATIVE_INFINITY} while fewer than numPassages passages have
+	 * been collected.
+	 */
+	public double getMinCompetitiveScore() {
+		if (numPassages == 0) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return queue.size() < numPassages ? Double.NEGATIVE_INFINITY : queue.peek().getScore();
+	}
+
+	/** Offers all the given scored passages to the collector. */
+	public void collectAll(List<Passage> passages) {
+		for (final Passage passage : passages) {
+			collect(passage);
+		}
+	}
+
+	/** Returns the top passages, best first. */
+	public List<Passage> getTopPassages() {
+		final List<Passage> topPassages = new ArrayList<>(queue);
+		Collections.sort(topPassages, PassageScorer.PASSAGE_COMPARATOR);
+		return topPassages;
+	}
+
+	/**
+	 * Collects the top passages of the given documents. If an {@link Executor} is
+	 * given, documents are processed in parallel and each document's passages are
+	 * trimmed to the top ones before they are merged. Since
+	 * {@link PassageScorer#PASSAGE_COMPARATOR} is a total order, the result does
+	 * not depend on the order in which documents complete.
+	 *
+	 * @param scoreDocs
+	 *            the documents to extract passages from.
+	 * @param numPassages
+	 *            the number of passages to return.
+	 * @param executor
+	 *            the {@link Executor} on which documents are processed, or
+	 *            {@code null} to process them on the calling thread.
+	 * @param docPassages
+	 *            returns the scored candidate passages of a document.
+	 */
+	public static List<Passage> collect(ScoreDoc[] scoreDocs, int numPassages, Executor executor,
+			DocPassages docPassages) throws IOException {
+		return collect(scoreDocs, numPassages, executor, docPassages, PassageSearchMetrics.NONE);
+	}
+
+	/**
+	 * Collects the top passages of the given documents, as
+	 * {@link #collect(ScoreDoc[], int, Executor, DocPassages)}, and records the
+	 * time spent collecting passages as {@link PassageSearchMetrics.Stage#COLLECT}.
+	 */
+	public static List<Passage> collect(ScoreDoc[] scoreDocs, int numPassages, Executor executor,
+			DocPassages docPassages, PassageSearchMetrics metrics) throws IOException {
+		final TopPassagesCollector collector = new TopPassagesCollector(numPassages);
+		if (executor == null || scoreDocs.length <= 1) {
+			for (final ScoreDoc sd : scoreDocs) {
+				final List<Passage> passages = docPassages.get(sd);
+				final long start = System.nanoTime();
+				collector.collectAll(passages);
+				metrics.record(PassageSearchMetrics.Stage.COLLECT, System.nanoTime() - start);
+			}
+			return collector.getTopPassages();
+		}
+
+		final List<FutureTask<List<Passage>>> tasks = new ArrayList<>(scoreDocs.length);
+		for (final ScoreDoc sd : scoreDocs) {
+			final FutureTask<List<Passage>> task = new FutureTask<>(() -> {
+				final List<Passage> passages = docPassages.get(sd);
+				final long start = System.nanoTime();
+				final TopPassagesCollector docCollector = new TopPassagesCollector(numPassages);
+				docCollector.collectAll(passages);
+				final List<Passage> topPassages = docCollector.getTopPassages();
+				metrics.record(PassageSearchMetrics.Stage.COLLECT, System.nanoTime() - start);
+				return topPassages;
+			});
+			executor.execute(task);
+			tasks.add(task);
+		}
+		try {
+			for (final FutureTask<List<Passage>> task : tasks) {
+				final List<Passage> passages = task.get();
+				final long start = System.nanoTime();
+				collector.collectAll(passages);
+				metrics.record(PassageSearchMetrics.Stage.COLLECT, System.nanoTime() - start);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while extracting passages");
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException(cause);
+		} finally {
+			for (final FutureTask<List<Passage>> task : tasks) {
+				task.cancel(false);
+			}
+		}
+		return collector.getTopPassages();
+	}
+
+	/** Generates the scored candidate passages of a document. */
+	@FunctionalInterface
+	public interface DocPassages {
+		List<Passage> get(ScoreDoc sd) throws IOException;
+	}
+
+}
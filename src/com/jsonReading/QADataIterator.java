@@ -0,0 +1,70 @@
+package com.jsonReading;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * An {@link Iterator} over the records of a Yahoo QA JSON array, which decodes
+ * one {@link QAData} at a time so that memory use does not depend on the size
+ * of the file.
+ */
+public class QADataIterator implements Iterator<QAData>, Closeable {
+
+	private final Gson gson = new Gson();
+	private final JsonReader reader;
+	private boolean closed = false;
+
+	/**
+	 * Sole constructor.
+	 *
+	 * @param in
+	 *            the {@link Reader} positioned at the beginning of the JSON array.
+	 *            It is closed when this iterator is closed or exhausted.
+	 */
+	public QADataIterator(Reader in) throws IOException {
+		this.reader = new JsonReader(in);
+		reader.beginArray();
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (closed) {
+			return false;
+		}
+		try {
+			if (reader.peek() == JsonToken.END_ARRAY) {
+				reader.endArray();
+				close();
+				return false;
+			}
+			return true;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public QAData next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return gson.fromJson(reader, QAData.class);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			reader.close();
+		}
+	}
+
+}
@@ -1,21 +1,81 @@
 package com.jsonReading;
 
+import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import com.google.gson.stream.JsonReader;
 
 public class ReadYahooDataBase {
+	public static final String DEFAULT_PATH = "nfL6.json";
+
 	public List<QAData> DataBase;
 
 	public ReadYahooDataBase() throws FileNotFoundException {
+		this(DEFAULT_PATH);
+	}
+
+	/**
+	 * Reads the whole QA list into {@link #DataBase}. Suitable for small files
+	 * only, use {@link #stream(String)} or {@link #forEach(String, Consumer)} for
+	 * the full dump.
+	 */
+	public ReadYahooDataBase(String path) throws FileNotFoundException {
 		final java.lang.reflect.Type QAType = new TypeToken<List<QAData>>() {
 		}.getType();
 		Gson gson = new Gson();
-		JsonReader reader = new JsonReader(new FileReader("nfL6.json"));
+		JsonReader reader = new JsonReader(new FileReader(path));
 		DataBase = gson.fromJson(reader, QAType); // contains the whole QA list
 	}
+
+	/** Returns an iterator which decodes the records of the given file lazily. */
+	public static QADataIterator iterator(String path) throws IOException {
+		final BufferedReader in = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8);
+		try {
+			return new QADataIterator(in);
+		} catch (IOException | RuntimeException e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns a sequential {@link Stream} over the records of the given file. The
+	 * stream should be closed (e.g. with try-with-resources) if it is not fully
+	 * consumed.
+	 */
+	public static Stream<QAData> stream(String path) throws IOException {
+		final QADataIterator it = iterator(path);
+		return StreamSupport
+				.stream(Spliterators.spliteratorUnknownSize(it, Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(() -> {
+					try {
+						it.close();
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+	}
+
+	/** Hands every record of the given file to the consumer, one at a time. */
+	public static void forEach(String path, Consumer<? super QAData> consumer) throws IOException {
+		try (QADataIterator it = iterator(path)) {
+			while (it.hasNext()) {
+				consumer.accept(it.next());
+			}
+		}
+	}
 }